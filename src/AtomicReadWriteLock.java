@@ -0,0 +1,244 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AtomicReadWriteLock: Single-word variant of ReadWriteLock
+ * Same guarantees as ReadWriteLock:
+ * 1. Multiple readers can read concurrently
+ * 2. Writers have exclusive access
+ * 3. Data persistence: Writers wait for all pending readers to complete
+ * 4. Single-read guarantee: A reader is pending for a data version only once
+ * Instead of three semaphores, the whole lock state lives in one long that is
+ * updated with VarHandle compare-and-set:
+ * - bits  0..29: readCount (readers currently inside)
+ * - bits 30..59: pendingReaders (readers inside that have not yet read the current version)
+ * - bit  60:     writer bit (a writer holds the lock or is draining readers)
+ * - bit  61:     waiters bit (some thread is parked and must be signalled on release)
+ * The uncontended read and write paths are a single CAS; threads park only when they must wait.
+ * Strategy: Writer-preference - once a writer sets the writer bit, new readers wait
+ */
+public class AtomicReadWriteLock {
+
+    // STATE ENCODING
+
+    private static final long READER_UNIT = 1L;
+    private static final long READER_MASK = (1L << 30) - 1;
+    private static final long PENDING_SHIFT = 30;
+    private static final long PENDING_UNIT = 1L << PENDING_SHIFT;
+    private static final long PENDING_MASK = READER_MASK << PENDING_SHIFT;
+    private static final long WRITER = 1L << 60;
+    private static final long WAITERS = 1L << 61;
+
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(AtomicReadWriteLock.class, "state", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // STATE VARIABLES
+
+    /**
+     * Packed lock word (see class comment for layout)
+     * Only modified through the STATE VarHandle
+     */
+    private volatile long state = 0;
+
+    /**
+     * Current data version, bumped by writeUnLock()
+     * Written only by the writer while it holds the writer bit
+     */
+    private volatile long version = 0;
+
+    /**
+     * Per-thread read record: [0] last data version read, [1] state delta applied by readLock(),
+     * [2] read holds of the thread (nested readLock() calls only bump this)
+     * Enforces "readers must read the same data only once" without a shared set
+     */
+    private final ThreadLocal<long[]> readRecord = ThreadLocal.withInitial(() -> new long[] {-1, 0, 0});
+
+    /**
+     * Slow path only: threads that must wait park here
+     * Never touched while the lock is uncontended
+     */
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition released = waitLock.newCondition();
+
+    // READER METHODS
+
+    /**
+     * Acquires read lock - allows concurrent reading
+     * Blocks if a writer is currently writing or waiting to write
+     * Reentrant: a thread that already holds the read lock only counts another hold, so a
+     * nested readLock() neither changes the state word nor waits behind a queued writer
+     */
+    public void readLock() {
+        long[] record = readRecord.get();
+        if (record[2] > 0) {
+            record[2]++;
+            return;
+        }
+
+        // Fast path: single CAS when no writer is present and the reader count has room
+        long s = state;
+        if ((s & WRITER) == 0 && (s & READER_MASK) != READER_MASK
+                && STATE.compareAndSet(this, s, s + (record[1] = readDelta(record)))) {
+            record[2] = 1;
+            return;
+        }
+
+        while (true) {
+            s = state;
+            if ((s & WRITER) == 0) {
+                if ((s & READER_MASK) == READER_MASK) {
+                    throw new IllegalStateException("Maximum reader count exceeded");
+                }
+                // Re-evaluated each round: a writer may have published a new version while we waited
+                if (STATE.compareAndSet(this, s, s + (record[1] = readDelta(record)))) {
+                    record[2] = 1;
+                    return;
+                }
+            } else {
+                awaitChange(s);
+            }
+        }
+    }
+
+    /**
+     * Releases read lock after reading completes
+     * Only the outermost release leaves the lock; wakes a draining writer if this was the last reader
+     */
+    public void readUnLock() {
+        long[] record = readRecord.get();
+        if (record[2] == 0) {
+            throw new IllegalMonitorStateException("readUnLock without readLock");
+        }
+        if (--record[2] > 0) {
+            return;  // Still held by an outer readLock()
+        }
+        long delta = record[1];
+        record[0] = version;  // Version cannot change while we hold the read lock
+        record[1] = 0;
+
+        long s;
+        do {
+            s = state;
+            if ((s & READER_MASK) == 0) {
+                throw new IllegalMonitorStateException("readUnLock without readLock");
+            }
+        } while (!STATE.compareAndSet(this, s, s - delta));
+
+        // Only the last reader can unblock a writer; waiters bit says someone is parked
+        long now = s - delta;
+        if ((now & READER_MASK) == 0 && (now & WAITERS) != 0) {
+            signalWaiters();
+        }
+    }
+
+    // WRITER METHODS
+
+    /**
+     * Acquires write lock for exclusive access
+     * Sets the writer bit first (blocking new readers), then waits until
+     * readCount == 0 and pendingReaders == 0
+     */
+    public void writeLock() {
+        // Fast path: lock completely free
+        if (STATE.compareAndSet(this, 0L, WRITER)) {
+            return;
+        }
+
+        // STEP 1: Claim the writer bit
+        while (true) {
+            long s = state;
+            if ((s & WRITER) == 0) {
+                if (STATE.compareAndSet(this, s, s | WRITER)) {
+                    break;
+                }
+            } else {
+                awaitChange(s);
+            }
+        }
+
+        // STEP 2: Drain active and pending readers
+        while (true) {
+            long s = state;
+            if ((s & (READER_MASK | PENDING_MASK)) == 0) {
+                return;
+            }
+            awaitChange(s);
+        }
+    }
+
+    /**
+     * Releases write lock after writing completes
+     * Publishes a new data version so every reader is pending for it again
+     */
+    public void writeUnLock() {
+        long s = state;
+        if ((s & WRITER) == 0) {
+            throw new IllegalMonitorStateException("writeUnLock without writeLock");
+        }
+        version++;  // Only the writer modifies version, and the writer bit stays set until the CAS below
+
+        do {
+            s = state;
+        } while (!STATE.compareAndSet(this, s, s & ~(WRITER | WAITERS)));
+
+        if ((s & WAITERS) != 0) {
+            signalWaiters();
+        }
+    }
+
+    /**
+     * State delta for a reader entering: one reader, plus one pending reader
+     * if this thread has not yet read the current version
+     */
+    private long readDelta(long[] record) {
+        return record[0] != version ? READER_UNIT + PENDING_UNIT : READER_UNIT;
+    }
+
+    // SLOW PATH
+
+    /**
+     * Parks the caller until the state word moves away from expected
+     * The waiters bit is published before re-checking, so a releaser either sees
+     * it and signals, or we see the release and skip parking
+     */
+    private void awaitChange(long expected) {
+        waitLock.lock();
+        try {
+            long s = state;
+            if ((s | WAITERS) != (expected | WAITERS)) {
+                return;
+            }
+            if ((s & WAITERS) == 0 && !STATE.compareAndSet(this, s, s | WAITERS)) {
+                return;  // State changed under us - let the caller retry
+            }
+            released.awaitUninterruptibly();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Clears the waiters bit and wakes every parked thread so each can retry
+     */
+    private void signalWaiters() {
+        waitLock.lock();
+        try {
+            long s;
+            do {
+                s = state;
+            } while ((s & WAITERS) != 0 && !STATE.compareAndSet(this, s, s & ~WAITERS));
+            released.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,496 @@
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * BroadcastRingBuffer: Ring-buffer engine in which every reader consumes every version exactly once
+ * ReadWriteLock's single-read guarantee plus "writers wait for unread data" is a broadcast queue
+ * of capacity one; this class is the same contract with a larger capacity, so writers can run ahead:
+ * - writers claim sequence numbers (one atomic increment) and publish into slot sequence % capacity
+ * - each registered reader advances its own cursor, the next sequence it will read
+ * - a writer only waits when its slot still holds a version the slowest reader has not read,
+ *   i.e. when the ring wraps onto that reader's cursor
+ * Nothing is shared between readers and nothing is locked on the common paths, so throughput is
+ * bounded by memory bandwidth rather than lock hand-offs
+ * Readers see only versions published after they registered
+ * readBatch() lets a reader that fell behind take every published version it has not read in
+ * one go, with a single cursor update for the whole range
+ * With a LagPolicy, a reader that stalls a writer for too long is evicted instead of waited for:
+ * writers lap it, and its next read throws MissedVersionsException saying how many versions
+ * it lost, then carries on from the newest ones - lost data is reported, never silent
+ */
+public class BroadcastRingBuffer<T> {
+
+    /**
+     * Reader cursors per page - pages are never moved, so a writer scan never races a resize
+     */
+    private static final int PAGE_READERS = 1024;
+
+    // STATE VARIABLES
+
+    /**
+     * Published values, sequence s in slot s & mask
+     */
+    private final Object[] entries;
+    private final int mask;
+
+    /**
+     * Sequence stored in each slot once its value is published (-1 before the first publish)
+     * Multiple writers finish out of order, so readers check their own slot rather than a single cursor
+     * A slot is filled one lap at a time: sequence s is only stored once s - capacity is published
+     */
+    private final AtomicLongArray available;
+
+    /**
+     * Next sequence to claim
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * Lower bound of the slowest reader's cursor, so writers rarely have to scan the readers
+     * Only changed under registryLock; Long.MAX_VALUE while no reader is registered
+     * Waiting writers poll the cursors without the lock and only take it to store a new bound
+     */
+    private volatile long gatingCache = Long.MAX_VALUE;
+
+    /**
+     * How writers wait for slow readers and readers wait for writers
+     */
+    private final WaitStrategy waitStrategy = WaitStrategy.spinThenPark();
+
+    // LAG POLICY
+
+    /**
+     * True if a LagPolicy was given; readers then check for eviction after loading a value
+     */
+    private final boolean evicting;
+
+    /**
+     * A blocking reader more than this many versions behind the writer is evicted at once
+     */
+    private final long maxLagVersions;
+
+    /**
+     * A blocking reader is evicted once a writer has waited this long for it
+     */
+    private final long maxWriterWaitNanos;
+
+    // READER REGISTRATION
+
+    /**
+     * Guards slot allocation, the page directory and gatingCache
+     */
+    private final ReentrantLock registryLock = new ReentrantLock();
+
+    /**
+     * Page directory of registered readers; replaced (never mutated) when capacity grows
+     */
+    private volatile Reader[][] pages = new Reader[0][];
+    private int nextSlot = 0;
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount = 0;
+
+    /**
+     * Creates a ring holding up to capacity unread versions (rounded up to a power of two)
+     * Writers wait for the slowest reader for as long as it takes
+     */
+    public BroadcastRingBuffer(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a ring whose writers evict readers that lag beyond lagPolicy (null: never evict)
+     */
+    public BroadcastRingBuffer(int capacity, LagPolicy lagPolicy) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.entries = new Object[size];
+        this.mask = size - 1;
+        this.available = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            available.set(i, -1);
+        }
+        this.evicting = lagPolicy != null;
+        this.maxLagVersions = evicting ? lagPolicy.maxLagVersions : Long.MAX_VALUE;
+        this.maxWriterWaitNanos = evicting ? lagPolicy.maxWriterWaitNanos : Long.MAX_VALUE;
+    }
+
+    /**
+     * Number of slots
+     */
+    public int capacity() {
+        return entries.length;
+    }
+
+    // READER METHODS
+
+    /**
+     * Registers a reader; it will read every version published from now on
+     * STEP 1: Force writers onto the slow path, which scans the readers under registryLock
+     * STEP 2: Start at the next sequence to be claimed - writers that claimed earlier
+     *         read the old gatingCache, but their sequences are before our start, and one
+     *         still storing holds back the next lap of its slot, so it cannot overwrite ours
+     */
+    public Reader registerReader() {
+        registryLock.lock();
+        try {
+            gatingCache = Long.MIN_VALUE;
+            int slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : nextSlot++;
+            Reader[][] directory = pages;
+            if (slot / PAGE_READERS >= directory.length) {
+                directory = Arrays.copyOf(directory, directory.length + 1);
+                directory[directory.length - 1] = new Reader[PAGE_READERS];
+                pages = directory;
+            }
+            Reader reader = new Reader(this, slot, claimed.get());
+            directory[slot / PAGE_READERS][slot % PAGE_READERS] = reader;
+            return reader;
+        } finally {
+            registryLock.unlock();
+        }
+    }
+
+    /**
+     * Unregisters a reader, so writers no longer wait for it
+     */
+    public void unregisterReader(Reader reader) {
+        checkOwner(reader);
+        if (reader.slot < 0) {
+            throw new IllegalStateException("Reader is already unregistered");
+        }
+        registryLock.lock();
+        try {
+            pages[reader.slot / PAGE_READERS][reader.slot % PAGE_READERS] = null;
+            if (freeSlotCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+            }
+            freeSlots[freeSlotCount++] = reader.slot;
+            reader.slot = -1;
+        } finally {
+            registryLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the reader's next version, waiting until it is published
+     * Advancing the cursor frees the slot for writers (as far as this reader is concerned)
+     * Throws MissedVersionsException if the reader was evicted since its last read
+     */
+    public T read(Reader reader) {
+        checkRegistered(reader);
+        long sequence = reader.next;
+        int index = (int) sequence & mask;
+        if (available.get(index) != sequence) {
+            waitStrategy.await(() -> available.get(index) == sequence || reader.evicted);
+        }
+        T value = entry(index);
+        if (evictedAfterLoad(reader)) {
+            throw rejoin(reader);
+        }
+        reader.next = sequence + 1;
+        return value;
+    }
+
+    /**
+     * Reads the reader's next version if it is already published, otherwise returns null
+     * Throws MissedVersionsException if the reader was evicted since its last read
+     */
+    public T tryRead(Reader reader) {
+        checkRegistered(reader);
+        long sequence = reader.next;
+        int index = (int) sequence & mask;
+        boolean published = available.get(index) == sequence;
+        T value = published ? entry(index) : null;
+        if (evictedAfterLoad(reader)) {
+            throw rejoin(reader);
+        }
+        if (!published) {
+            return null;
+        }
+        reader.next = sequence + 1;
+        return value;
+    }
+
+    /**
+     * Catch-up read: hands fn (value, sequence) for every version from the reader's cursor up to
+     * the last contiguously published one (at most maxVersions), waiting only for the first
+     * STEP 1: Wait for the reader's next version
+     * STEP 2: Extend the range while the following slots are published
+     * STEP 3: Deliver the range, then advance the cursor once - one write frees all the slots
+     * Returns the number of versions read; if fn throws, the versions before it count as read
+     * Throws MissedVersionsException if the reader is evicted before or during the batch
+     * (the versions handed to fn before that were valid)
+     */
+    public int readBatch(Reader reader, int maxVersions, ObjLongConsumer<? super T> fn) {
+        checkRegistered(reader);
+        if (maxVersions < 1) {
+            throw new IllegalArgumentException("maxVersions must be positive");
+        }
+        long first = reader.next;
+        int firstIndex = (int) first & mask;
+        if (available.get(firstIndex) != first) {
+            waitStrategy.await(() -> available.get(firstIndex) == first || reader.evicted);
+        }
+        long limit = first + Math.min(maxVersions, entries.length);
+        long end = first + 1;
+        while (end < limit && available.get((int) end & mask) == end) {
+            end++;
+        }
+
+        long sequence = first;
+        try {
+            for (; sequence < end; sequence++) {
+                T value = entry((int) sequence & mask);
+                if (evictedAfterLoad(reader)) {
+                    break;
+                }
+                fn.accept(value, sequence);
+            }
+        } finally {
+            reader.next = sequence;
+        }
+        if (sequence < end) {
+            throw rejoin(reader);
+        }
+        return (int) (end - first);
+    }
+
+    /**
+     * Newest claimed sequence + 1; versions below it are published or about to be
+     */
+    public long claimedSequence() {
+        return claimed.get();
+    }
+
+    // WRITER METHODS
+
+    /**
+     * Publishes value as the next version and returns its sequence
+     * STEP 1: Claim a sequence
+     * STEP 2: Wait while the slot still holds a version the slowest reader has not read
+     *         (or, if no reader gates it, until the previous lap's writer has published it)
+     * STEP 3: Store the value, then mark the slot published for this sequence
+     */
+    public long publish(T value) {
+        long sequence = claimed.getAndIncrement();
+        long wrapPoint = sequence - entries.length;
+        if (wrapPoint >= gatingCache) {
+            long waitStart = System.nanoTime();
+            waitStrategy.await(() -> wrapPoint < pollSlowestCursor(sequence, waitStart));
+            if (evicting) {
+                // Readers we evicted must see the eviction before they can see our value
+                VarHandle.storeStoreFence();
+            }
+        }
+        int index = (int) sequence & mask;
+        long previousLap = Math.max(wrapPoint, -1);
+        if (available.get(index) != previousLap) {
+            // A writer that claimed a lap earlier, while no reader gated it, is still storing here
+            waitStrategy.await(() -> available.get(index) == previousLap);
+        }
+        entries[index] = value;
+        available.set(index, sequence);
+        return sequence;
+    }
+
+    /**
+     * Polls the readers' cursors for a waiting writer without the lock
+     * While the slowest reader still blocks us, that is the answer; once it no longer does, or a
+     * reader is due for eviction, the scan is redone by refreshGatingCache() - a reader
+     * registering meanwhile may be missing from this one
+     */
+    private long pollSlowestCursor(long sequence, long waitStart) {
+        long wrapPoint = sequence - entries.length;
+        boolean waitedTooLong = evicting && System.nanoTime() - waitStart > maxWriterWaitNanos;
+        long slowest = Long.MAX_VALUE;
+        for (Reader[] page : pages) {
+            for (Reader reader : page) {
+                if (reader == null || reader.evicted) {
+                    continue;
+                }
+                long next = reader.next;
+                if (evicting && next <= wrapPoint && (sequence - next > maxLagVersions || waitedTooLong)) {
+                    return refreshGatingCache(sequence, waitStart);
+                }
+                slowest = Math.min(slowest, next);
+            }
+        }
+        return slowest <= wrapPoint ? slowest : refreshGatingCache(sequence, waitStart);
+    }
+
+    /**
+     * Scans the readers for the slowest cursor and caches it
+     * Readers that block this writer's sequence and exceed the lag policy are evicted
+     * (skipped from now on) rather than waited for
+     */
+    private long refreshGatingCache(long sequence, long waitStart) {
+        registryLock.lock();
+        try {
+            long wrapPoint = sequence - entries.length;
+            boolean waitedTooLong = evicting && System.nanoTime() - waitStart > maxWriterWaitNanos;
+            long slowest = Long.MAX_VALUE;
+            for (Reader[] page : pages) {
+                for (Reader reader : page) {
+                    if (reader == null || reader.evicted) {
+                        continue;
+                    }
+                    long next = reader.next;
+                    if (evicting && next <= wrapPoint && (sequence - next > maxLagVersions || waitedTooLong)) {
+                        reader.evicted = true;
+                        continue;
+                    }
+                    slowest = Math.min(slowest, next);
+                }
+            }
+            gatingCache = slowest;
+            return slowest;
+        } finally {
+            registryLock.unlock();
+        }
+    }
+
+    /**
+     * Called after loading a value: true if the reader was evicted, in which case a writer may
+     * already have overwritten the slot and the value must be discarded
+     */
+    private boolean evictedAfterLoad(Reader reader) {
+        if (!evicting) {
+            return false;
+        }
+        VarHandle.loadLoadFence();  // The value load must not move below the eviction check
+        return reader.evicted;
+    }
+
+    /**
+     * Re-admits an evicted reader at the next sequence to be claimed, like registerReader()
+     * Writers that lapped it are still publishing below that sequence, but slots are filled
+     * one lap at a time, so none of them can overwrite a version the reader is waiting for
+     * Returns the exception that tells the reader what it missed
+     */
+    private MissedVersionsException rejoin(Reader reader) {
+        registryLock.lock();
+        try {
+            gatingCache = Long.MIN_VALUE;
+            long resume = claimed.get();
+            long missed = resume - reader.next;
+            reader.next = resume;
+            reader.evicted = false;
+            return new MissedVersionsException(missed, resume);
+        } finally {
+            registryLock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T entry(int index) {
+        return (T) entries[index];
+    }
+
+    private void checkRegistered(Reader reader) {
+        checkOwner(reader);
+        if (reader.slot < 0) {
+            throw new IllegalStateException("Reader is unregistered");
+        }
+    }
+
+    private void checkOwner(Reader reader) {
+        if (reader.owner != this) {
+            throw new IllegalArgumentException("Reader belongs to another BroadcastRingBuffer");
+        }
+    }
+
+    /**
+     * Registered reader of one BroadcastRingBuffer, used by one thread at a time
+     */
+    public static final class Reader {
+        private final BroadcastRingBuffer<?> owner;
+        private int slot;
+
+        /**
+         * Next sequence to read; written by the reader, scanned by writers
+         */
+        private volatile long next;
+
+        /**
+         * Set by a writer that stopped waiting for this reader; cleared when the reader rejoins
+         */
+        private volatile boolean evicted = false;
+
+        private Reader(BroadcastRingBuffer<?> owner, int slot, long next) {
+            this.owner = owner;
+            this.slot = slot;
+            this.next = next;
+        }
+
+        /**
+         * Next sequence this reader will read
+         */
+        public long nextSequence() {
+            return next;
+        }
+    }
+
+    /**
+     * When writers stop waiting for a slow reader
+     * A reader is only ever evicted while it blocks a writer, i.e. while the ring is full up to its cursor
+     */
+    public static final class LagPolicy {
+        private long maxLagVersions = Long.MAX_VALUE;
+        private long maxWriterWaitNanos = Long.MAX_VALUE;
+
+        /**
+         * Evict a blocking reader that is more than this many versions behind the writer
+         * Values below the capacity mean writers never wait for a reader at all
+         */
+        public LagPolicy maxLagVersions(long maxLagVersions) {
+            this.maxLagVersions = maxLagVersions;
+            return this;
+        }
+
+        /**
+         * Evict a blocking reader once a writer has waited this long for it,
+         * which bounds the writer's worst-case latency
+         */
+        public LagPolicy maxWriterWait(long time, TimeUnit unit) {
+            this.maxWriterWaitNanos = unit.toNanos(time);
+            return this;
+        }
+    }
+
+    /**
+     * Thrown by the next read of an evicted reader
+     * The reader has already been re-admitted at resumeSequence(); read again to carry on
+     */
+    public static final class MissedVersionsException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final long missed;
+        private final long resumeSequence;
+
+        private MissedVersionsException(long missed, long resumeSequence) {
+            super("Reader was evicted and missed " + missed + " versions");
+            this.missed = missed;
+            this.resumeSequence = resumeSequence;
+        }
+
+        /**
+         * Number of versions the reader will never see
+         */
+        public long missed() {
+            return missed;
+        }
+
+        /**
+         * First sequence the reader will read after rejoining
+         */
+        public long resumeSequence() {
+            return resumeSequence;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ToIntFunction;
+
+/**
+ * CohortReadWriteLock: Socket-aware (NUMA cohort) variant of ReadWriteLock for multi-socket hosts
+ * Same guarantees as ReadWriteLock:
+ * 1. Multiple readers can read concurrently
+ * 2. Writers have exclusive access
+ * 3. Data persistence: Writers wait for all pending readers to complete
+ *    (pending readers are always among the active readers a writer drains)
+ * Instead of one S semaphore and one readCount shared by every core:
+ * - each socket has its own local writer lock and its own reader indicator (own cache lines)
+ * - writers first queue on their socket's local lock; only the head of a socket's queue
+ *   competes for the global lock, and the global lock is passed on inside the socket
+ *   (local hand-off, no cross-socket traffic) up to batchLimit times before it is released
+ * - readers only touch their socket's indicator unless a writer is active
+ * Fairness: the global lock is a fair semaphore, so sockets take turns; readers that had to wait
+ * for a writer batch are let in before the next batch starts
+ */
+public class CohortReadWriteLock {
+
+    /**
+     * Longs per reader indicator: 16 * 8 bytes = 128 bytes, so two sockets never share a cache line
+     */
+    private static final int INDICATOR_PADDING = 16;
+
+    // SEMAPHORES
+
+    /**
+     * Global lock: held by the writer cohort of one socket at a time
+     * Fair=true, so sockets waiting for it are served in order
+     */
+    private final Semaphore global = new Semaphore(1, true);
+
+    /**
+     * Per-socket writer state
+     */
+    private final Socket[] sockets;
+
+    // STATE VARIABLES
+
+    /**
+     * Reader indicators: readers of socket i count themselves at index i * INDICATOR_PADDING
+     */
+    private final AtomicLongArray readerIndicators;
+
+    /**
+     * True while a writer is writing or draining readers
+     * Readers increment their indicator, then re-check this flag; writers set it, then scan the
+     * indicators - both sides are volatile, so either the reader backs off or the writer waits
+     */
+    private volatile boolean writerActive = false;
+
+    /**
+     * Readers that were turned away by an active writer and are waiting to get in
+     * A writer that has just taken the global lock lets them in before starting its batch
+     */
+    private final AtomicInteger waitingReaders = new AtomicInteger();
+
+    /**
+     * Local hand-offs allowed before the global lock must be released
+     */
+    private final int batchLimit;
+
+    /**
+     * Maps a thread to its socket index (0 .. socket count - 1)
+     */
+    private final ToIntFunction<Thread> socketOf;
+
+    /**
+     * Socket of each thread, looked up once per thread
+     */
+    private final ThreadLocal<Integer> threadSocket;
+
+    /**
+     * How threads wait for the local locks and for readers to drain
+     */
+    private final WaitStrategy waitStrategy = WaitStrategy.spinThenPark();
+
+    /**
+     * Creates a lock for the sockets of this host, mapping threads by the CPU they run on
+     */
+    public CohortReadWriteLock(int batchLimit) {
+        this(Topology.SOCKETS, batchLimit, thread -> Topology.currentSocket());
+    }
+
+    /**
+     * Creates a lock with an explicit socket count and thread-to-socket mapping
+     * (e.g. from the CPU affinity each thread pool is pinned to)
+     * The mapping is applied once per thread, on the thread itself
+     */
+    public CohortReadWriteLock(int socketCount, int batchLimit, ToIntFunction<Thread> socketOf) {
+        if (socketCount < 1 || batchLimit < 1) {
+            throw new IllegalArgumentException("socketCount and batchLimit must be positive");
+        }
+        this.batchLimit = batchLimit;
+        this.socketOf = socketOf;
+        this.sockets = new Socket[socketCount];
+        for (int i = 0; i < socketCount; i++) {
+            sockets[i] = new Socket();
+        }
+        this.readerIndicators = new AtomicLongArray(socketCount * INDICATOR_PADDING);
+        this.threadSocket = ThreadLocal.withInitial(this::lookUpSocket);
+    }
+
+    // READER METHODS
+
+    /**
+     * Acquires read lock - allows concurrent reading
+     * Uncontended, this is one increment of the socket-local indicator
+     */
+    public void readLock() {
+        int indicator = threadSocket.get() * INDICATOR_PADDING;
+        readerIndicators.incrementAndGet(indicator);
+        if (!writerActive) {
+            return;
+        }
+
+        // A writer is active: back out and wait until its batch ends
+        // Stay counted in waitingReaders until actually in, so the next batch waits for us
+        readerIndicators.decrementAndGet(indicator);
+        waitingReaders.incrementAndGet();
+        while (true) {
+            waitStrategy.await(() -> !writerActive);
+            readerIndicators.incrementAndGet(indicator);
+            if (!writerActive) {
+                waitingReaders.decrementAndGet();
+                return;
+            }
+            readerIndicators.decrementAndGet(indicator);
+        }
+    }
+
+    /**
+     * Releases read lock after reading completes
+     */
+    public void readUnLock() {
+        int indicator = threadSocket.get() * INDICATOR_PADDING;
+        if (readerIndicators.decrementAndGet(indicator) < 0) {
+            readerIndicators.incrementAndGet(indicator);
+            throw new IllegalMonitorStateException("readUnLock without readLock");
+        }
+    }
+
+    // WRITER METHODS
+
+    /**
+     * Acquires write lock for exclusive access
+     * STEP 1: Queue on the socket's local lock
+     * STEP 2: Take the global lock, unless a writer of this socket passed it on with the local lock
+     * STEP 3: Announce the write and wait for the readers of every socket to leave
+     */
+    public void writeLock() {
+        Socket socket = sockets[threadSocket.get()];
+        waitStrategy.acquireUninterruptibly(socket.local);
+
+        if (!socket.ownsGlobal) {
+            waitStrategy.acquireUninterruptibly(global);
+            socket.ownsGlobal = true;
+            // Readers held back by the previous batch go first, so readers cannot starve
+            waitStrategy.await(() -> waitingReaders.get() == 0);
+        }
+        socket.writer = Thread.currentThread();
+
+        writerActive = true;
+        for (int i = 0; i < readerIndicators.length(); i += INDICATOR_PADDING) {
+            int indicator = i;
+            waitStrategy.await(() -> readerIndicators.get(indicator) == 0);
+        }
+    }
+
+    /**
+     * Releases write lock after writing completes
+     * Passes the global lock to the next writer of the same socket while the batch limit allows;
+     * otherwise releases it so readers and the other sockets get their turn
+     */
+    public void writeUnLock() {
+        Socket socket = sockets[threadSocket.get()];
+        if (socket.writer != Thread.currentThread()) {
+            throw new IllegalMonitorStateException("writeUnLock without writeLock");
+        }
+        socket.writer = null;
+
+        if (socket.batch < batchLimit && socket.local.hasQueuedThreads()) {
+            // Local hand-off: writerActive stays set, the next local writer skips the global lock
+            socket.batch++;
+        } else {
+            socket.batch = 0;
+            socket.ownsGlobal = false;
+            writerActive = false;
+            global.release();
+        }
+        socket.local.release();
+    }
+
+    /**
+     * Socket of the calling thread, clamped to the configured socket count
+     */
+    private int lookUpSocket() {
+        return Math.floorMod(socketOf.applyAsInt(Thread.currentThread()), sockets.length);
+    }
+
+    /**
+     * Writer state of one socket
+     * batch, ownsGlobal and writer are only written by the holder of local
+     * (semaphore release/acquire orders them between consecutive holders)
+     */
+    private static final class Socket {
+        private final Semaphore local = new Semaphore(1, true);
+        private int batch = 0;
+        private boolean ownsGlobal = false;
+
+        /**
+         * Thread holding the write lock through this socket, checked by writeUnLock()
+         * Plain field, like ReadWriteLock's writeOwner: only the writer stores its own thread here,
+         * so no other thread can mistake itself for the writer
+         */
+        private Thread writer;
+    }
+
+    /**
+     * Host topology from Linux sysfs/procfs; everything falls back to a single socket elsewhere
+     */
+    private static final class Topology {
+
+        /**
+         * Socket (physical package) of each CPU
+         */
+        private static final Map<Integer, Integer> CPU_SOCKET = readCpuSockets();
+
+        /**
+         * Number of sockets on this host (at least 1)
+         */
+        private static final int SOCKETS = Math.max(1, (int) CPU_SOCKET.values().stream().distinct().count());
+
+        private static Map<Integer, Integer> readCpuSockets() {
+            Map<Integer, Integer> sockets = new HashMap<>();
+            Map<Integer, Integer> dense = new HashMap<>();  // Package ids need not be 0..n-1
+            for (int cpu = 0; ; cpu++) {
+                Path id = Paths.get("/sys/devices/system/cpu/cpu" + cpu + "/topology/physical_package_id");
+                if (!Files.exists(id)) {
+                    return sockets;
+                }
+                try {
+                    int pkg = Integer.parseInt(Files.readString(id).trim());
+                    sockets.put(cpu, dense.computeIfAbsent(pkg, k -> dense.size()));
+                } catch (IOException | NumberFormatException e) {
+                    return sockets;
+                }
+            }
+        }
+
+        /**
+         * Socket of the CPU the calling thread is running on
+         * Field 39 of /proc/thread-self/stat is the CPU the thread last ran on
+         */
+        private static int currentSocket() {
+            if (SOCKETS == 1) {
+                return 0;
+            }
+            try {
+                String stat = Files.readString(Paths.get("/proc/thread-self/stat"));
+                String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+                return CPU_SOCKET.getOrDefault(Integer.parseInt(fields[36]), 0);
+            } catch (IOException | RuntimeException e) {
+                return 0;
+            }
+        }
+    }
+}
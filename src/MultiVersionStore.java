@@ -0,0 +1,279 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * MultiVersionStore: Keeps the last N data versions so writers can run up to N versions ahead of readers
+ * Same data-persistence rule as ReadWriteLock - every registered reader reads every version, and
+ * a version is never overwritten before all of them have read it - but a writer does not wait for
+ * the readers of the last version; it creates the next one in another slot:
+ * - versions live in a ring of N slots; version k is in slot k % N
+ * - each registered reader reads the versions in order, one after the other, and records the
+ *   last version it read; writers scan those records (like BroadcastRingBuffer's cursors)
+ * - writing version k waits until every registered reader has read version k - N, the one
+ *   in the slot being reused, i.e. only while some reader is N versions behind
+ * With N = 1, every write waits until all registered readers have read the previous version,
+ *   and a reader that has read the newest version waits for the next write
+ * readBatch() lets a reader that fell behind take every version it has not read yet
+ * in one call, with one update of its last version read
+ * Values must not be modified once written; write a changed copy instead
+ */
+public class MultiVersionStore<T> {
+
+    /**
+     * Reader records per page - pages are never moved, so a writer scan never races a resize
+     */
+    private static final int PAGE_READERS = 1024;
+
+    // STATE VARIABLES
+
+    /**
+     * Retained versions, version k in slot k % slots.length
+     */
+    private final Version<T>[] slots;
+
+    /**
+     * Newest complete version; advanced only after its slot is filled
+     */
+    private volatile long latest = 0;
+
+    /**
+     * Serializes writers and reader registration; readers never touch it
+     */
+    private final ReentrantLock writerLock = new ReentrantLock();
+
+    /**
+     * Lower bound of the slowest reader's last version read, so writers rarely have to scan
+     * the readers; guarded by writerLock, Long.MAX_VALUE while no reader is registered
+     */
+    private long gatingCache = Long.MAX_VALUE;
+
+    /**
+     * How writers wait for slow readers and readers wait for writers
+     */
+    private final WaitStrategy waitStrategy = WaitStrategy.spinThenPark();
+
+    // READER REGISTRATION
+
+    /**
+     * Guards slot allocation and the page directory
+     */
+    private final ReentrantLock registryLock = new ReentrantLock();
+
+    /**
+     * Page directory of registered readers; replaced (never mutated) when capacity grows
+     */
+    private volatile Reader[][] pages = new Reader[0][];
+    private int nextSlot = 0;
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount = 0;
+
+    /**
+     * Creates a store retaining up to retainedVersions versions, starting with initial as version 0
+     */
+    @SuppressWarnings("unchecked")
+    public MultiVersionStore(int retainedVersions, T initial) {
+        if (retainedVersions < 1) {
+            throw new IllegalArgumentException("retainedVersions must be positive");
+        }
+        slots = (Version<T>[]) new Version<?>[retainedVersions];
+        for (int i = 0; i < retainedVersions; i++) {
+            slots[i] = new Version<>();
+        }
+        slots[0].value = initial;
+    }
+
+    // READER METHODS
+
+    /**
+     * Registers a reader; its first read returns the newest version, and from then on writers
+     * wait for it, so use one per reading thread and release it with unregisterReader()
+     * Waits for a write in progress, which could otherwise overwrite that first version
+     */
+    public Reader registerReader() {
+        writerLock.lock();
+        try {
+            registryLock.lock();
+            try {
+                int slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : nextSlot++;
+                Reader[][] directory = pages;
+                if (slot / PAGE_READERS >= directory.length) {
+                    directory = Arrays.copyOf(directory, directory.length + 1);
+                    directory[directory.length - 1] = new Reader[PAGE_READERS];
+                    pages = directory;
+                }
+                Reader reader = new Reader(this, slot, latest - 1);
+                directory[slot / PAGE_READERS][slot % PAGE_READERS] = reader;
+                gatingCache = Math.min(gatingCache, reader.lastVersionRead);
+                return reader;
+            } finally {
+                registryLock.unlock();
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Unregisters a reader, so writers no longer wait for it
+     */
+    public void unregisterReader(Reader reader) {
+        checkOwner(reader);
+        if (reader.slot < 0) {
+            throw new IllegalStateException("Reader is already unregistered");
+        }
+        registryLock.lock();
+        try {
+            pages[reader.slot / PAGE_READERS][reader.slot % PAGE_READERS] = null;
+            if (freeSlotCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+            }
+            freeSlots[freeSlotCount++] = reader.slot;
+            reader.slot = -1;
+        } finally {
+            registryLock.unlock();
+        }
+    }
+
+    /**
+     * Applies fn to the reader's next version (last version read + 1) and records it as read
+     * STEP 1: Wait until that version is written
+     * STEP 2: Read it in place - writers cannot reuse its slot until we record it as read
+     * STEP 3: Record it as read, which lets writers reuse the slot (as far as we are concerned)
+     */
+    public <R> R read(Reader reader, Function<? super T, ? extends R> fn) {
+        checkRegistered(reader);
+        long version = reader.lastVersionRead + 1;
+        if (latest < version) {
+            waitStrategy.await(() -> latest >= version);
+        }
+        R result = fn.apply(slots[(int) (version % slots.length)].value);
+        reader.lastVersionRead = version;
+        return result;
+    }
+
+    /**
+     * Catch-up read: hands fn (value, version) for every version from the reader's last version
+     * read + 1 up to the newest, oldest first, and records them all as read in one update
+     * Writers wait for this reader before reusing those slots, so the range has no gaps;
+     * nothing here waits for a writer
+     * Returns the number of versions read; if fn throws, the versions before it count as read
+     */
+    public int readBatch(Reader reader, ObjLongConsumer<? super T> fn) {
+        checkRegistered(reader);
+        long first = reader.lastVersionRead + 1;
+        long newest = latest;
+        long version = first;
+        try {
+            for (; version <= newest; version++) {
+                fn.accept(slots[(int) (version % slots.length)].value, version);
+            }
+        } finally {
+            if (version > first) {
+                reader.lastVersionRead = version - 1;
+            }
+        }
+        return (int) (version - first);
+    }
+
+    /**
+     * Newest complete version
+     */
+    public long version() {
+        return latest;
+    }
+
+    // WRITER METHODS
+
+    /**
+     * Publishes value as the next version and returns its number
+     * Waits only while a registered reader has not yet read the version in the slot being
+     * reused (the oldest retained one), never for readers of the newer versions
+     */
+    public long write(T value) {
+        writerLock.lock();
+        try {
+            long next = latest + 1;
+            Version<T> slot = slots[(int) (next % slots.length)];
+
+            // STEP 1: Wait until every registered reader has read the version we overwrite
+            long overwritten = next - slots.length;
+            if (overwritten > gatingCache) {
+                waitStrategy.await(() -> overwritten <= refreshGatingCache());
+            }
+
+            // STEP 2: Fill the slot, then publish
+            slot.value = value;
+            latest = next;
+            return next;
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Scans the readers for the lowest last version read and caches it; caller holds writerLock
+     */
+    private long refreshGatingCache() {
+        long slowest = Long.MAX_VALUE;
+        for (Reader[] page : pages) {
+            for (Reader reader : page) {
+                if (reader != null) {
+                    slowest = Math.min(slowest, reader.lastVersionRead);
+                }
+            }
+        }
+        gatingCache = slowest;
+        return slowest;
+    }
+
+    private void checkRegistered(Reader reader) {
+        checkOwner(reader);
+        if (reader.slot < 0) {
+            throw new IllegalStateException("Reader is unregistered");
+        }
+    }
+
+    private void checkOwner(Reader reader) {
+        if (reader.owner != this) {
+            throw new IllegalArgumentException("Reader belongs to another MultiVersionStore");
+        }
+    }
+
+    /**
+     * One retained version
+     * value is only written once every registered reader has read the version it replaces;
+     * latest then publishes it
+     */
+    private static final class Version<T> {
+        private volatile T value;
+    }
+
+    /**
+     * Registered reader of one MultiVersionStore, used by one thread at a time
+     * lastVersionRead is written by the reading thread and scanned by writers
+     */
+    public static final class Reader {
+        private final MultiVersionStore<?> owner;
+        private int slot;
+
+        /**
+         * Last version this reader read (one below the newest version when it registered)
+         */
+        private volatile long lastVersionRead;
+
+        private Reader(MultiVersionStore<?> owner, int slot, long lastVersionRead) {
+            this.owner = owner;
+            this.slot = slot;
+            this.lastVersionRead = lastVersionRead;
+        }
+
+        /**
+         * Last version this reader read (one below the newest version when it registered)
+         */
+        public long lastVersionRead() {
+            return lastVersionRead;
+        }
+    }
+}
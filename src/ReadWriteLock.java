@@ -1,6 +1,17 @@
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
 /**
  * ReadWriteLock: Solution to the Readers-Writers Synchronization Problem
@@ -9,7 +20,28 @@ import java.util.Set;
  * 2. Writers have exclusive access (no readers or other writers allowed)
  * 3. Data persistence: Writers wait for all pending readers to complete
  * 4. Single-read guarantee: Each reader reads the current data version only once
- * Strategy: Fair Reader-Writer Lock (FIFO) to prevent starvation
+ * Strategy: Fair Reader-Writer Lock (FIFO) to prevent starvation by default;
+ * other fairness trade-offs are selectable through Policy
+ * Optional reader-biased mode: readers skip mutex and S entirely and only bump a
+ * per-stripe counter; writers revoke the bias and scan every stripe instead
+ * Optimistic reads: tryOptimisticRead()/validate() let readers read without
+ * acquiring anything and retry only if a writer intervened
+ * Optional lock-free counters: readCount and pendingReaders are updated with atomics,
+ * so readers skip mutex and dataMutex except when opening or closing the reader group
+ * Contended waits go through a configurable WaitStrategy (park, or adaptive spin-then-park)
+ * tryReadLock()/tryWriteLock() give up instead of queueing, optionally after a timeout
+ * Optional cohort admission: readers that queue up during a write are admitted together
+ * when it ends, with one readCount update and a bulk unpark
+ * upgradableReadLock() gives one reader at a time a read hold it can upgrade() in place
+ * downgrade() turns a write hold into a read hold without letting another writer in between
+ * Virtual threads: no wait path blocks inside a monitor, so waiting never pins a carrier;
+ * readers are identified by handles, so a million virtual readers need no names or sets
+ * Both locks are reentrant: hold counts live in the reader's handle and in the write owner
+ * fields, so re-entry touches no shared state
+ * readLockAsync()/writeLockAsync() return futures: async waiters are queued continuations,
+ * granted by whichever thread releases the lock, so they never occupy a thread
+ * write(op) flat-combines queued writes: one thread runs a batch of them under a single
+ * writeLock() and publishes a single new data version
  */
 public class ReadWriteLock {
 
@@ -21,177 +53,2160 @@ public class ReadWriteLock {
      * - First reader acquires it to block writers
      * - Last reader releases it to allow writers
      * - Writers acquire it for exclusive access
-     * Fair=true ensures FIFO ordering to prevent starvation
+     * Fair=true ensures FIFO ordering to prevent starvation (except under Policy.UNFAIR)
      */
-    private final Semaphore S = new Semaphore(1, true);
+    private final Semaphore S;
 
     /**
      * Mutex: Protects readCount from race conditions
      * Ensures only one thread modifies readCount at a time
      */
-    private final Semaphore mutex = new Semaphore(1, true);
+    private final Semaphore mutex;
 
     /**
      * Data Mutex: Protects data version tracking structures
-     * Ensures thread-safe access to readersWhoReadCurrentVersion and pendingReaders
+     * Ensures thread-safe access to pendingReaders and the drain hand-off
      */
-    private final Semaphore dataMutex = new Semaphore(1, true);
+    private final Semaphore dataMutex;
+
+    /**
+     * Drained: Wakes a writer once the last pending reader finishes
+     * Starts with zero permits; released only by the reader that brings pendingReaders to zero
+     * while a writer is waiting, so every permit is consumed by exactly one writer
+     */
+    private final Semaphore drained = new Semaphore(0);
+
+    // FAIRNESS POLICY
+
+    /**
+     * Selected fairness policy
+     */
+    private final Policy policy;
+
+    /**
+     * Read gate (WRITER_PREFERENCE only): readers pass through it (acquire + release) while
+     * it is closed; held by the writers as long as any writer is waiting or writing
+     */
+    private final Semaphore readGate;
+
+    /**
+     * WRITER_PREFERENCE only: protects writersWaiting
+     */
+    private final Semaphore writerCountMutex;
+
+    /**
+     * WRITER_PREFERENCE only: writers waiting or writing; the first one closes readGate,
+     * the last one reopens it
+     */
+    private int writersWaiting = 0;
+
+    /**
+     * READER_PREFERENCE only: writers queue here first, so at most one writer competes
+     * with readers for S and readers that queued during a write go before the next writer
+     */
+    private final Semaphore writerTurnstile;
+
+    // PHASE-FAIR TICKETS (PF-T, Brandenburg and Anderson)
+
+    /**
+     * Reader entry/exit counters step by PF_READER; the low bits of phaseIn hold the
+     * writer-present bit and the phase id of the current writer
+     */
+    private static final long PF_READER = 0x100;
+    private static final long PF_WRITER_BITS = 0x3;
+    private static final long PF_PRESENT = 0x2;
+    private static final long PF_PHASE_ID = 0x1;
+
+    /**
+     * Readers that entered (plus writer bits) / readers that left
+     */
+    private final AtomicLong phaseIn = new AtomicLong();
+    private final AtomicLong phaseOut = new AtomicLong();
+
+    /**
+     * Writer tickets: next ticket to hand out / ticket currently served
+     * Writers are served strictly in ticket order
+     */
+    private final AtomicLong writerTicket = new AtomicLong();
+    private final AtomicLong writerServing = new AtomicLong();
+
+    /**
+     * Threads parked until a PF-T hand-off, woken by the thread that makes it (no polling):
+     * readers waiting for a writer phase to end / writers waiting for their ticket /
+     * the writer waiting for the readers of the closed phase to leave
+     */
+    private final ConcurrentLinkedQueue<Thread> phaseReaderWaiters = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Thread> phaseTicketWaiters = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Thread> phaseDrainWaiters = new ConcurrentLinkedQueue<>();
+
+    // READER-BIASED MODE
+
+    /**
+     * Longs per stripe: 16 * 8 bytes = 128 bytes, so two stripes never share a cache line
+     * (covers adjacent-line prefetching as well)
+     */
+    private static final int STRIPE_PADDING = 16;
+
+    /**
+     * True if readers use the striped fast path
+     */
+    private final boolean readerBiased;
+
+    /**
+     * Striped reader indicator: stripe i lives at index i * STRIPE_PADDING
+     * Each fast-path reader increments only the stripe its reader slot hashes to
+     * Null unless readerBiased
+     */
+    private final AtomicLongArray readerStripes;
+
+    /**
+     * Stripe count - 1 (stripe count is a power of two)
+     */
+    private final int stripeMask;
+
+    /**
+     * Writers that have announced themselves (waiting for S or holding it)
+     * While non-zero the bias is revoked and new readers take the semaphore path
+     */
+    private final AtomicInteger writersPresent = new AtomicInteger();
+
+    // COHORT ADMISSION
+
+    /**
+     * True if readers that find the reader group closed queue in a cohort instead of on mutex and S
+     */
+    private final boolean cohortAdmission;
+
+    /**
+     * Guards cohort, and every change of S ownership in cohort mode, so a reader never
+     * queues in the cohort while S is free
+     * A ReentrantLock, not a monitor: on JDK 21 a virtual thread blocked entering a
+     * contended monitor pins its carrier thread
+     */
+    private final ReentrantLock cohortLock = new ReentrantLock();
+
+    /**
+     * Readers waiting for the next hand-off of S to the reader group
+     * Replaced by a fresh cohort each time one is admitted; guarded by cohortLock
+     */
+    private ReaderCohort cohort = new ReaderCohort();
+
+    // UPGRADABLE READ
+
+    /**
+     * Upgrade gate: held by the upgradable reader, so at most one exists at a time
+     * Plain readers and writers never touch it
+     */
+    private final Semaphore upgradeMutex;
+
+    /**
+     * Set by upgrade() before it drops its read hold, cleared once it holds the write lock
+     * A writer that gets exclusive access in between backs off, so nothing is written before the upgrade
+     */
+    private volatile boolean upgrading = false;
+
+    /**
+     * Writers that backed off for an upgrade, unparked when upgrading is cleared
+     */
+    private final ConcurrentLinkedQueue<Thread> upgradeWaiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Thread holding the upgradable read lock (plain field, same reasoning as writeOwner)
+     */
+    private Thread upgradeOwner;
+
+    // ASYNC ACQUISITION
+
+    /**
+     * Async waiters in arrival order; the head is granted first
+     */
+    private final ConcurrentLinkedQueue<AsyncWaiter> asyncWaiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Pump requests not yet served: the thread that moves this off zero runs the pump and
+     * keeps going until no request arrived meanwhile, so a release is never missed
+     */
+    private final AtomicInteger asyncPumpRequests = new AtomicInteger();
+
+    /**
+     * Ready condition of a waiter that was granted outright
+     */
+    private static final BooleanSupplier GRANTED = () -> true;
+
+    // FLAT COMBINING
+
+    /**
+     * Most queued operations a combiner runs in one exclusive section, so a steady stream
+     * of write(op) calls cannot keep readers out indefinitely
+     */
+    private static final int MAX_COMBINED_WRITES = 64;
+
+    /**
+     * Operations submitted through write(op) and not yet picked up by a combiner
+     */
+    private final ConcurrentLinkedQueue<WriteRequest> writeRequests = new ConcurrentLinkedQueue<>();
+
+    /**
+     * True while some thread is combining; the other submitters park until their
+     * operation is done or the combiner role is free
+     */
+    private final AtomicBoolean combining = new AtomicBoolean();
+
+    // READER REGISTRATION
+
+    /**
+     * Guards slot allocation; only touched by registerReader()/unregisterReader()
+     * (a ReentrantLock for the same reason as cohortLock)
+     */
+    private final ReentrantLock registryLock = new ReentrantLock();
+
+    /**
+     * Next never-used reader slot
+     */
+    private int nextSlot = 0;
+
+    /**
+     * Slots returned by unregisterReader(), reused before new ones so slots stay dense
+     */
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount = 0;
+
+    /**
+     * Implicit handle per thread for the no-argument readLock()/readUnLock()
+     */
+    private final ThreadLocal<ReaderHandle> threadHandle =
+            ThreadLocal.withInitial(() -> registerReader(Thread.currentThread()));
+
+    /**
+     * Implicit handle used most recently, checked before threadHandle so that a thread
+     * re-entering the lock (or reading repeatedly) skips the ThreadLocal lookup
+     * Plain field: a stale value only costs a lookup, and a handle is only used if its
+     * final thread field is the caller
+     * Not used in reader-biased mode: with several reading threads every miss would store to
+     * this shared field, the cross-core write the stripes exist to avoid
+     */
+    private ReaderHandle lastImplicitHandle;
 
     // STATE VARIABLES
 
     /**
-     * Number of readers currently in the critical section
+     * Number of readers currently in the critical section
+     * Guarded by mutex, except in lock-free mode where it only moves off zero under mutex
+     * and every other change is a CAS
+     */
+    private final AtomicInteger readCount = new AtomicInteger();
+
+    /**
+     * Count of readers who still need to read the current data version
+     * Writers must wait until this reaches zero (data persistence requirement)
+     */
+    private int pendingReaders = 0;
+
+    /**
+     * True while a writer holds S and is parked on drained waiting for pendingReaders to reach zero
+     * Guarded by dataMutex
+     */
+    private boolean writerWaitingForDrain = false;
+
+    /**
+     * True if readCount and pendingCount are maintained without mutex and dataMutex
+     */
+    private final boolean lockFreeCounters;
+
+    /**
+     * Lock-free replacement for pendingReaders: striped internally, so readers registering
+     * and completing do not contend on one cache line
+     * Summed by a writer holding S, when readers can only be decrementing it, and by those
+     * readers while the writer waits for it to drain
+     */
+    private final LongAdder pendingCount = new LongAdder();
+
+    /**
+     * Writer parked until pendingCount drains, unparked by the reader that sees the sum reach zero
+     */
+    private final ConcurrentLinkedQueue<Thread> pendingDrainWaiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * How threads wait for semaphores and drain conditions
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * When the current holder of S got it (writer, or first reader of the group)
+     * Only maintained for adaptive wait strategies, to feed WaitStrategy.recordHold()
+     */
+    private volatile long heldSince = 0;
+
+    /**
+     * Write sequence: even while no writer is writing, odd while one is
+     * writeLock() makes it odd once the writer is exclusive, writeUnLock() bumps it to the
+     * next even value, so every published data version has its own even stamp
+     * The global data version is sequence / 2 - publishing a version is one increment
+     * Starts at 2 so that a stamp of 0 always means "no valid stamp"
+     */
+    private volatile long sequence = 2;
+
+    /**
+     * Thread holding the write lock, for reentrancy
+     * Plain field, like ReentrantLock's owner: only the owner writes its own thread here,
+     * so no other thread can mistake itself for the owner
+     */
+    private Thread writeOwner;
+
+    /**
+     * Write holds of writeOwner (re-entries plus reads taken inside the write)
+     */
+    private int writeHolds = 0;
+
+    /**
+     * Bitmap single-read tracking: one bit per reader slot, kept instead of the handle's version
+     * Every reader still has its ReaderHandle, so this is an alternative record, not a memory saving
+     * Null unless Options.bitmapTracking was set
+     */
+    private final ReaderBitmap readBitmap;
+
+    /**
+     * Creates a fair lock in which every reader goes through mutex and S
+     */
+    public ReadWriteLock() {
+        this(new Options());
+    }
+
+    /**
+     * Creates a lock, optionally in reader-biased mode
+     */
+    public ReadWriteLock(boolean readerBiased) {
+        this(new Options().readerBiased(readerBiased));
+    }
+
+    /**
+     * Creates a lock with the given options
+     */
+    public ReadWriteLock(Options options) {
+        this.policy = options.policy;
+        boolean fair = policy != Policy.UNFAIR;
+        this.S = new Semaphore(1, fair);
+        this.mutex = new Semaphore(1, fair);
+        this.dataMutex = new Semaphore(1, fair);
+        this.readGate = policy == Policy.WRITER_PREFERENCE ? new Semaphore(1, true) : null;
+        this.writerCountMutex = policy == Policy.WRITER_PREFERENCE ? new Semaphore(1, true) : null;
+        this.writerTurnstile = policy == Policy.READER_PREFERENCE ? new Semaphore(1, true) : null;
+        this.upgradeMutex = new Semaphore(1, fair);
+        this.readerBiased = options.readerBiased;
+        this.lockFreeCounters = options.lockFreeCounters;
+        this.cohortAdmission = options.cohortAdmission;
+        this.waitStrategy = options.waitStrategy != null ? options.waitStrategy : WaitStrategy.blocking();
+        this.readBitmap = options.bitmapTracking ? new ReaderBitmap() : null;
+        if (readerBiased) {
+            // Two stripes per core, rounded up to a power of two, keeps hash collisions rare
+            int stripes = 1;
+            while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+                stripes <<= 1;
+            }
+            this.readerStripes = new AtomicLongArray(stripes * STRIPE_PADDING);
+            this.stripeMask = stripes - 1;
+        } else {
+            this.readerStripes = null;
+            this.stripeMask = 0;
+        }
+    }
+
+    // READER REGISTRATION METHODS
+
+    /**
+     * Registers a reader and returns its handle
+     * The handle carries a dense int slot and the reader's own "last version read" record,
+     * so the read path needs no thread-name lookup, no hashing and no allocation
+     */
+    public ReaderHandle registerReader() {
+        return registerReader(null);
+    }
+
+    /**
+     * Registers a reader; thread is set for implicit per-thread handles only
+     */
+    private ReaderHandle registerReader(Thread thread) {
+        registryLock.lock();
+        try {
+            int slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : nextSlot++;
+            if (readBitmap != null) {
+                readBitmap.ensureCapacity(slot + 1);
+            }
+            return new ReaderHandle(this, slot, thread);
+        } finally {
+            registryLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the handle's slot for reuse by a later registerReader()
+     * The handle must not hold the read lock and must not be used afterwards
+     */
+    public void unregisterReader(ReaderHandle handle) {
+        checkOwner(handle);
+        if (handle.holds != 0 || handle.slot < 0) {
+            throw new IllegalStateException("Reader handle is in use or already unregistered");
+        }
+        registryLock.lock();
+        try {
+            if (freeSlotCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+            }
+            if (readBitmap != null) {
+                readBitmap.clear(handle.slot);  // Next owner of the slot has read nothing yet
+            }
+            freeSlots[freeSlotCount++] = handle.slot;
+            handle.slot = -1;
+        } finally {
+            registryLock.unlock();
+        }
+    }
+
+    /**
+     * Implicit handle of the calling thread: the cached last one if it belongs to the caller,
+     * otherwise the ThreadLocal one
+     */
+    private ReaderHandle implicitHandle() {
+        if (readerBiased) {
+            return threadHandle.get();
+        }
+        ReaderHandle cached = lastImplicitHandle;
+        if (cached != null && cached.thread == Thread.currentThread()) {
+            return cached;
+        }
+        cached = threadHandle.get();
+        lastImplicitHandle = cached;  // Only on a miss, i.e. when the lookup was needed anyway
+        return cached;
+    }
+
+    // READER METHODS
+
+    /**
+     * Acquires read lock for the calling thread's implicit reader handle
+     * Each thread is registered on first use; threads that come and go should
+     * prefer explicit handles so their slots can be unregistered
+     */
+    public void readLock() {
+        readLock(implicitHandle());
+    }
+
+    /**
+     * Releases read lock taken with readLock()
+     */
+    public void readUnLock() {
+        readUnLock(implicitHandle());
+    }
+
+    /**
+     * Acquires read lock - allows concurrent reading
+     * Blocks if a writer is currently writing
+     * Reentrant: a handle that already holds the read lock only bumps its hold count, and
+     * the write lock holder may read as well (its read hold keeps the lock exclusive)
+     * Re-entry is per handle: two handles used on one thread are two separate readers
+     * Taking the write lock while holding only a read lock still deadlocks
+     * Interrupts do not abort the wait (the interrupt status is kept), so on return
+     * the caller always holds the lock; use tryReadLock() to be able to give up
+     */
+    public void readLock(ReaderHandle reader) {
+        checkOwner(reader);
+        acquireRead(reader, false, 0L);
+    }
+
+    /**
+     * Acquires read lock only if it is available without waiting
+     */
+    public boolean tryReadLock() {
+        return tryReadLock(implicitHandle(), 0L);
+    }
+
+    /**
+     * Acquires read lock if it becomes available within the timeout
+     * Returns false (holding nothing) on timeout or interrupt; an interrupt is re-asserted
+     */
+    public boolean tryReadLock(long timeoutNanos) {
+        return tryReadLock(implicitHandle(), timeoutNanos);
+    }
+
+    /**
+     * tryReadLock(long) for an explicit reader handle
+     */
+    public boolean tryReadLock(ReaderHandle reader, long timeoutNanos) {
+        checkOwner(reader);
+        if (acquireRead(reader, true, System.nanoTime() + timeoutNanos)) {
+            return true;
+        }
+        pumpAsync();  // We may have briefly held mutex or S while an async waiter tried
+        return false;
+    }
+
+    /**
+     * Shared read acquisition; untimed callers always succeed
+     * Re-entry and reads inside a write are counted without touching shared state
+     */
+    private boolean acquireRead(ReaderHandle reader, boolean timed, long deadline) {
+        if (reader.holds > 0) {
+            reader.holds++;
+            return true;
+        }
+        if (writeOwner == Thread.currentThread()) {
+            writeHolds++;  // Read inside our own write: the write hold already excludes everyone
+            reader.writeBacked = true;
+            reader.holds = 1;
+            return true;
+        }
+        if (!acquireFirstRead(reader, timed, deadline)) {
+            return false;
+        }
+        reader.holds = 1;
+        return true;
+    }
+
+    /**
+     * First (outermost) read hold of a handle
+     * Every step that fails its deadline undoes the earlier steps before returning false
+     */
+    private boolean acquireFirstRead(ReaderHandle reader, boolean timed, long deadline) {
+        if (readerBiased && tryFastReadLock(reader)) {
+            return true;
+        }
+        if (!passReadGate(timed, deadline)) {
+            return false;
+        }
+        if (policy == Policy.PHASE_FAIR) {
+            return phaseFairReadLock(reader, timed, deadline);
+        }
+        if (cohortAdmission) {
+            return cohortReadLock(reader, timed, deadline);
+        }
+        if (lockFreeCounters) {
+            return lockFreeReadLock(reader, timed, deadline);
+        }
+
+        // Note: Fair semaphore ensures writers are not starved even if readers arrive continuously
+
+        // STEP 1: Update reader count safely
+        if (!take(mutex, timed, deadline)) {
+            return false;
+        }
+
+        // First reader blocks writers by acquiring S
+        if (readCount.incrementAndGet() == 1) {
+            if (!take(S, timed, deadline)) {
+                readCount.decrementAndGet();  // Give up: group was never opened
+                mutex.release();
+                return false;
+            }
+            holdStarted();
+        }
+        mutex.release();
+
+        // STEP 2: Register this reader as "pending" for current data version
+        registerPending(reader);
+        return true;
+    }
+
+    /**
+     * Releases read lock after reading completes
+     * Updates tracking data and releases S if this is the last reader
+     */
+    public void readUnLock(ReaderHandle reader) {
+        checkOwner(reader);
+        if (reader.holds == 0) {
+            throw new IllegalMonitorStateException("readUnLock without readLock");
+        }
+        if (--reader.holds > 0) {
+            return;  // Still held by an outer readLock()
+        }
+        releaseRead(reader);
+        pumpAsync();
+    }
+
+    /**
+     * Releases the outermost read hold of a handle
+     */
+    private void releaseRead(ReaderHandle reader) {
+        if (reader.writeBacked) {
+            reader.writeBacked = false;
+            writeUnLock();  // Drop the write hold this read was counted as
+            return;
+        }
+        if (reader.pendingOnly) {
+            reader.pendingOnly = false;
+            completePending(reader);  // Downgraded hold outside readCount: only the pending mark
+            return;
+        }
+        if (reader.fastHolds > 0) {
+            fastReadUnLock(reader);
+            return;
+        }
+
+        // STEP 1: Mark this reader as having completed current version
+        completePending(reader);
+
+        if (policy == Policy.PHASE_FAIR) {
+            phaseOut.addAndGet(PF_READER);  // Leave the read phase
+            wakeWaiters(phaseDrainWaiters);
+            return;
+        }
+        if (lockFreeCounters || cohortAdmission) {
+            lockFreeReadUnLock();
+            return;
+        }
+
+        // STEP 2: Decrement reader count
+        waitStrategy.acquireUninterruptibly(mutex);
+
+        // Last reader releases S to allow writers
+        if (readCount.decrementAndGet() == 0) {
+            holdEnded();
+            S.release();  // Unblock writers
+        }
+        mutex.release();
+    }
+
+    /**
+     * Lock-free read path: joining an already open reader group is one CAS on readCount
+     * Only the first reader (readCount 0 -> 1) takes mutex, because it may have to wait for S;
+     * no other transition can move readCount off zero, so the CAS never races that reader
+     */
+    private boolean lockFreeReadLock(ReaderHandle reader, boolean timed, long deadline) {
+        // STEP 1: Join the reader group while it is open
+        boolean joined = false;
+        for (int c = readCount.get(); c > 0 && !joined; c = readCount.get()) {
+            joined = readCount.compareAndSet(c, c + 1);
+        }
+
+        // Group closed: open it under mutex, blocking writers via S
+        if (!joined) {
+            if (!take(mutex, timed, deadline)) {
+                return false;
+            }
+            while (!joined) {
+                int c = readCount.get();
+                if (c > 0) {
+                    joined = readCount.compareAndSet(c, c + 1);  // Opened by someone before us
+                } else {
+                    if (!take(S, timed, deadline)) {
+                        mutex.release();
+                        return false;
+                    }
+                    holdStarted();
+                    readCount.set(1);
+                    joined = true;
+                }
+            }
+            mutex.release();
+        }
+
+        // STEP 2: Register as pending (without dataMutex)
+        registerPending(reader);
+        return true;
+    }
+
+    /**
+     * Lock-free release: the reader whose decrement returns zero is the last one out
+     * and hands S back to writers
+     */
+    private void lockFreeReadUnLock() {
+        if (readCount.decrementAndGet() == 0) {
+            holdEnded();
+            releaseS(false);  // Unblock writers
+        }
+    }
+
+    /**
+     * Cohort read path: joining an open reader group is one CAS, as in lock-free mode
+     * A reader that finds the group closed opens it if S is free; otherwise it queues in
+     * the cohort and parks until the holder of S hands S to the whole cohort at once
+     */
+    private boolean cohortReadLock(ReaderHandle reader, boolean timed, long deadline) {
+        // STEP 1: Join the reader group while it is open
+        if (!joinOpenGroup()) {
+            ReaderCohort queued = null;
+            ReaderCohort admitted = null;
+            cohortLock.lock();
+            try {
+                if (!joinOpenGroup()) {
+                    // Group closed: open it ourselves, bringing along anyone already queued,
+                    // or queue for the next hand-off (fair S: never ahead of a queued writer)
+                    if ((!S.isFair() || !S.hasQueuedThreads()) && S.tryAcquire()) {
+                        admitted = admitCohort(1);
+                    } else {
+                        queued = cohort;
+                        queued.waiters.add(Thread.currentThread());
+                    }
+                }
+            } finally {
+                cohortLock.unlock();
+            }
+            if (admitted != null) {
+                wakeCohort(admitted);
+            }
+            if (queued != null && !awaitAdmission(queued, timed, deadline)) {
+                return false;
+            }
+        }
+
+        // STEP 2: Register as pending for the current data version
+        registerPending(reader);
+        return true;
+    }
+
+    /**
+     * Adds the caller to the reader group if the group is open (readCount > 0)
+     */
+    private boolean joinOpenGroup() {
+        for (int c = readCount.get(); c > 0; c = readCount.get()) {
+            if (readCount.compareAndSet(c, c + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parks until the cohort is admitted
+     * A timed reader that gives up leaves the cohort, unless it was admitted meanwhile -
+     * it is then already counted in readCount and keeps the read lock
+     */
+    private boolean awaitAdmission(ReaderCohort queued, boolean timed, long deadline) {
+        boolean interrupted = false;
+        while (!queued.admitted) {
+            if (!timed) {
+                LockSupport.park(this);
+                interrupted |= Thread.interrupted();  // Keep waiting, like the other untimed paths
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            interrupted |= Thread.interrupted();
+            if (remaining <= 0 || interrupted) {
+                cohortLock.lock();
+                try {
+                    if (!queued.admitted) {
+                        queued.waiters.remove(Thread.currentThread());
+                        if (interrupted) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return false;
+                    }
+                } finally {
+                    cohortLock.unlock();
+                }
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * Makes the current cohort the reader group: a single readCount update covers every
+     * member (plus extra readers already holding S for it); a fresh cohort takes its place
+     * Called with cohortLock and S held; returns the admitted cohort, or null if it was empty
+     */
+    private ReaderCohort admitCohort(int extra) {
+        ReaderCohort admitted = cohort;
+        readCount.set(extra + admitted.waiters.size());
+        holdStarted();
+        if (admitted.waiters.isEmpty()) {
+            return null;
+        }
+        cohort = new ReaderCohort();
+        admitted.admitted = true;
+        return admitted;
+    }
+
+    /**
+     * Bulk unpark of an admitted cohort; the waiter list no longer changes once admitted
+     */
+    private void wakeCohort(ReaderCohort admitted) {
+        for (Thread waiter : admitted.waiters) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Releases S on behalf of a writer or of the last reader of a group
+     * In cohort mode, S goes straight to the queued cohort instead, if there is one -
+     * after a reader group only if no writer is queued on S, so that writer keeps its turn
+     */
+    private void releaseS(boolean byWriter) {
+        if (!cohortAdmission) {
+            S.release();
+            return;
+        }
+        ReaderCohort admitted = null;
+        cohortLock.lock();
+        try {
+            if (!cohort.waiters.isEmpty() && (byWriter || !S.hasQueuedThreads())) {
+                admitted = admitCohort(0);
+            } else {
+                S.release();
+            }
+        } finally {
+            cohortLock.unlock();
+        }
+        if (admitted != null) {
+            wakeCohort(admitted);
+        }
+    }
+
+    /**
+     * Called when a timed writer gives up on S: the holder may have released S to it
+     * while a cohort was queued, leaving S free with readers still waiting
+     */
+    private void admitStrandedCohort() {
+        ReaderCohort admitted = null;
+        cohortLock.lock();
+        try {
+            if (!cohort.waiters.isEmpty() && !S.hasQueuedThreads() && S.tryAcquire()) {
+                admitted = admitCohort(0);
+            }
+        } finally {
+            cohortLock.unlock();
+        }
+        if (admitted != null) {
+            wakeCohort(admitted);
+        }
+    }
+
+    /**
+     * Registers the reader as "pending" for the current data version
+     * This implements: "Writer must ensure data not yet read by all readers is not overwritten"
+     * dataMutex is only ever held for a few instructions, so no deadline is needed here
+     */
+    private void registerPending(ReaderHandle reader) {
+        if (lockFreeCounters) {
+            if (!hasReadCurrentVersion(reader)) {
+                pendingCount.increment();
+            }
+            return;
+        }
+        waitStrategy.acquireUninterruptibly(dataMutex);
+
+        // Only count as pending if this reader hasn't read current version yet
+        if (!hasReadCurrentVersion(reader)) {
+            pendingReaders++;
+        }
+        dataMutex.release();
+    }
+
+    /**
+     * Marks the reader as having read the current version and, if it was pending,
+     * hands off to a writer waiting for the last pending reader
+     */
+    private void completePending(ReaderHandle reader) {
+        if (lockFreeCounters) {
+            if (markReadCurrentVersion(reader)) {
+                pendingCount.decrement();
+                // Only decrements happen while a writer waits, so whoever sums to zero is the last
+                if (!pendingDrainWaiters.isEmpty() && pendingCount.sum() == 0) {
+                    wakeWaiters(pendingDrainWaiters);
+                }
+            }
+            return;
+        }
+        waitStrategy.acquireUninterruptibly(dataMutex);
+
+        // Only update if not already marked complete
+        // This enforces "readers must read the same data only once"
+        if (markReadCurrentVersion(reader)) {
+            pendingReaders--;
+
+            // Last pending reader hands off directly to the waiting writer
+            if (pendingReaders == 0 && writerWaitingForDrain) {
+                writerWaitingForDrain = false;
+                drained.release();
+            }
+        }
+        dataMutex.release();
+    }
+
+    /**
+     * PHASE_FAIR read path (PF-T): take a reader ticket; if a writer is present, wait only
+     * until that writer's phase ends - a new writer changes the phase id, so a reader
+     * never waits for more than one writer phase
+     * A timed reader first waits, uncounted, for a moment with no writer present: once
+     * counted it cannot withdraw without confusing a writer's exit count, so after that
+     * it waits out at most one writer phase regardless of the deadline
+     */
+    private boolean phaseFairReadLock(ReaderHandle reader, boolean timed, long deadline) {
+        if (timed && !awaitHandOff(phaseReaderWaiters, () -> (phaseIn.get() & PF_WRITER_BITS) == 0, true, deadline)) {
+            return false;
+        }
+        long writerBits = phaseIn.getAndAdd(PF_READER) & PF_WRITER_BITS;
+        if (writerBits != 0) {
+            awaitHandOff(phaseReaderWaiters, () -> (phaseIn.get() & PF_WRITER_BITS) != writerBits, false, 0L);
+        }
+        registerPending(reader);
+        return true;
+    }
+
+    /**
+     * PHASE_FAIR write path (PF-T): writers are served in ticket order; the served writer
+     * sets the writer bits, which ends the current read phase for new readers, then waits
+     * only for the readers that entered before it
+     * A timed writer takes a ticket only when it is next in line, because a queued ticket
+     * cannot be withdrawn without stalling the writers behind it; its deadline covers
+     * reaching the head of the line, after which it waits out at most one reader phase
+     */
+    private boolean phaseFairWriteLock(boolean timed, long deadline) {
+        long ticket;
+        if (timed) {
+            do {
+                if (!awaitHandOff(phaseTicketWaiters, () -> writerTicket.get() == writerServing.get(), true, deadline)) {
+                    return false;
+                }
+                ticket = writerServing.get();
+            } while (!writerTicket.compareAndSet(ticket, ticket + 1));
+        } else {
+            long myTicket = writerTicket.getAndIncrement();
+            awaitHandOff(phaseTicketWaiters, () -> writerServing.get() == myTicket, false, 0L);
+            ticket = myTicket;
+        }
+
+        // Close the read phase: readers arriving from now on wait for this writer
+        // This wait ignores the deadline: it is bounded by one reader phase, and giving up here
+        // would let the phase id flip twice under a reader that is waiting for it to change
+        long readersBefore = phaseIn.getAndAdd(PF_PRESENT | (ticket & PF_PHASE_ID)) & ~PF_WRITER_BITS;
+        awaitHandOff(phaseDrainWaiters, () -> phaseOut.get() == readersBefore, false, 0L);
+        return true;
+    }
+
+    /**
+     * Ends the writer phase: clears the writer bits (releasing readers that arrived during it)
+     * and serves the next writer ticket
+     */
+    private void phaseFairWriteUnLock() {
+        phaseIn.addAndGet(-(phaseIn.get() & PF_WRITER_BITS));  // Only the writer touches these bits
+        wakeWaiters(phaseReaderWaiters);
+        writerServing.incrementAndGet();
+        wakeWaiters(phaseTicketWaiters);
+    }
+
+    /**
+     * Waits for a hand-off (PF-T phase change, lock-free pending drain, end of an upgrade):
+     * spins for the wait strategy's budget, then parks on waiters until the thread making the
+     * hand-off unparks it
+     * The waiter is queued before its last check and the waker changes the state before it
+     * scans the queue, so a wake-up cannot fall in between
+     * Like the other waits, interrupts do not abort it (the interrupt status is kept)
+     */
+    private boolean awaitHandOff(ConcurrentLinkedQueue<Thread> waiters, BooleanSupplier condition,
+                               boolean timed, long deadline) {
+        long spinUntil = System.nanoTime() + waitStrategy.spinBudgetNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - spinUntil >= 0) {
+                return parkForHandOff(waiters, condition, timed, deadline);
+            }
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+
+    private boolean parkForHandOff(ConcurrentLinkedQueue<Thread> waiters, BooleanSupplier condition,
+                                 boolean timed, long deadline) {
+        Thread current = Thread.currentThread();
+        boolean interrupted = false;
+        waiters.add(current);
+        try {
+            while (!condition.getAsBoolean()) {
+                if (!timed) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                interrupted |= Thread.interrupted();  // Otherwise park() would return at once from now on
+            }
+            return true;
+        } finally {
+            waiters.remove(current);
+            if (interrupted) {
+                current.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Unparks every thread waiting for a hand-off; each re-checks its own condition
+     */
+    private static void wakeWaiters(ConcurrentLinkedQueue<Thread> waiters) {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        for (Thread waiter : waiters) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Under WRITER_PREFERENCE, waits at the read gate while a writer holds it
+     * An open gate is only checked, not acquired, so readers do not serialize on it;
+     * a reader racing a writer that is just closing the gate merely delays that writer
+     */
+    private boolean passReadGate(boolean timed, long deadline) {
+        if (readGate == null || (readGate.availablePermits() > 0 && !readGate.hasQueuedThreads())) {
+            return true;
+        }
+        if (!take(readGate, timed, deadline)) {
+            return false;
+        }
+        readGate.release();
+        return true;
+    }
+
+    /**
+     * Writer-side policy step taken before S
+     * - READER_PREFERENCE: queue on the writer turnstile
+     * - WRITER_PREFERENCE: the first waiting writer closes the read gate
+     */
+    private boolean enterWriterPolicy(boolean timed, long deadline) {
+        switch (policy) {
+            case READER_PREFERENCE:
+                return take(writerTurnstile, timed, deadline);
+            case WRITER_PREFERENCE:
+                waitStrategy.acquireUninterruptibly(writerCountMutex);
+                if (++writersWaiting == 1) {
+                    // Readers only pass through the gate, so this wait is short
+                    waitStrategy.acquireUninterruptibly(readGate);
+                }
+                writerCountMutex.release();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Undoes enterWriterPolicy(), after S is released or when the writer gives up
+     */
+    private void leaveWriterPolicy() {
+        switch (policy) {
+            case READER_PREFERENCE:
+                writerTurnstile.release();
+                break;
+            case WRITER_PREFERENCE:
+                waitStrategy.acquireUninterruptibly(writerCountMutex);
+                if (--writersWaiting == 0) {
+                    readGate.release();  // Last writer reopens the gate for readers
+                }
+                writerCountMutex.release();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reader-biased fast path: increment own stripe, then re-check that no writer arrived
+     * The stripe increment and the writersPresent read are both sequentially consistent,
+     * so either we see the writer and back out, or the writer's scan sees our stripe
+     * Pending tracking is not needed here - the writer's stripe scan already waits for us
+     */
+    private boolean tryFastReadLock(ReaderHandle reader) {
+        if (writersPresent.get() != 0) {
+            return false;
+        }
+        int index = stripeIndex(reader);
+        readerStripes.incrementAndGet(index);
+        if (writersPresent.get() != 0) {
+            readerStripes.decrementAndGet(index);  // Bias revoked - take the semaphore path
+            return false;
+        }
+        reader.fastHolds++;
+        return true;
+    }
+
+    /**
+     * Releases a fast-path read hold
+     * Records the read without dataMutex: the record belongs to this reader only,
+     * so repeated reads do not share a written cache line
+     */
+    private void fastReadUnLock(ReaderHandle reader) {
+        markReadCurrentVersion(reader);
+        reader.fastHolds--;
+        readerStripes.decrementAndGet(stripeIndex(reader));
+    }
+
+    /**
+     * Stripe of a reader (fixed per slot, so lock and unlock hit the same stripe)
+     * Dense slots map round-robin onto stripes
+     */
+    private int stripeIndex(ReaderHandle reader) {
+        return (reader.slot & stripeMask) * STRIPE_PADDING;
+    }
+
+    /**
+     * Writer side of reader-biased mode: waits until every stripe is empty
+     * Writers pay this scan so that readers never share a cache line
+     * Backs off from spinning to yielding to short parks, since readers may hold for long
+     */
+    private boolean awaitStripesDrained(boolean timed, long deadline) {
+        for (int i = 0; i < readerStripes.length(); i += STRIPE_PADDING) {
+            int stripe = i;
+            if (!awaitCondition(() -> readerStripes.get(stripe) == 0, timed, deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Notes when S was taken, for adaptive wait strategies
+     */
+    private void holdStarted() {
+        if (waitStrategy.isAdaptive()) {
+            heldSince = System.nanoTime();
+        }
+    }
+
+    /**
+     * Reports how long S was held, just before it is released
+     */
+    private void holdEnded() {
+        if (waitStrategy.isAdaptive()) {
+            waitStrategy.recordHold(System.nanoTime() - heldSince);
+        }
+    }
+
+    /**
+     * Current data version (stable while any reader or writer holds the lock)
+     */
+    private long currentVersion() {
+        return sequence >>> 1;
+    }
+
+    /**
+     * True if the reader has already read the current data version
+     */
+    private boolean hasReadCurrentVersion(ReaderHandle reader) {
+        if (readBitmap != null) {
+            return readBitmap.hasRead(reader.slot);
+        }
+        return reader.lastVersionRead == currentVersion();
+    }
+
+    /**
+     * Records that the reader has read the current data version
+     * Returns true if this was its first read of the version
+     */
+    private boolean markReadCurrentVersion(ReaderHandle reader) {
+        if (readBitmap != null) {
+            return readBitmap.markRead(reader.slot);
+        }
+        long version = currentVersion();
+        if (reader.lastVersionRead == version) {
+            return false;
+        }
+        reader.lastVersionRead = version;
+        return true;
+    }
+
+    /**
+     * Rejects handles registered with a different lock or already unregistered
+     */
+    private void checkOwner(ReaderHandle reader) {
+        if (reader.owner != this || reader.slot < 0) {
+            throw new IllegalArgumentException("Reader handle is not registered with this lock");
+        }
+    }
+
+    /**
+     * Takes one permit, waiting through the configured WaitStrategy
+     * Untimed waits ignore interrupts and always succeed; timed waits return false
+     * at the deadline, or on interrupt (with the interrupt status re-asserted)
+     */
+    private boolean take(Semaphore semaphore, boolean timed, long deadline) {
+        if (!timed) {
+            waitStrategy.acquireUninterruptibly(semaphore);
+            return true;
+        }
+        try {
+            return waitStrategy.tryAcquire(semaphore, deadline - System.nanoTime());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Waits for a condition that has no semaphore hand-off, honouring the deadline if timed
+     */
+    private boolean awaitCondition(BooleanSupplier condition, boolean timed, long deadline) {
+        if (!timed) {
+            waitStrategy.await(condition);
+            return true;
+        }
+        return waitStrategy.await(condition, deadline - System.nanoTime());
+    }
+
+    // WRITER METHODS
+
+
+    /**
+     * Acquires write lock for exclusive access
+     * Blocks until:
+     * 1. All active readers complete (readCount == 0)
+     * 2. All pending readers finish current version (pendingReaders == 0)
+     * 3. No other writer is active
+     * This implements: "Writer must ensure data not yet read by all readers is not overwritten"
+     * Like readLock(), interrupts do not abort the wait
+     */
+    public void writeLock() {
+        acquireWrite(false, 0L, false);
+    }
+
+    // UPGRADABLE READ METHODS
+
+    /**
+     * upgradableReadLock() for the calling thread's implicit reader handle
+     */
+    public void upgradableReadLock() {
+        upgradableReadLock(implicitHandle());
+    }
+
+    /**
+     * Acquires an upgradable read lock: shared with plain readers, exclusive with writers
+     * and other upgradable readers
+     * The holder can later upgrade() without anyone writing in between, so a
+     * check-then-write flow never has to re-validate or retry
+     */
+    public void upgradableReadLock(ReaderHandle reader) {
+        checkOwner(reader);
+        if (upgradeOwner == Thread.currentThread() || writeOwner == Thread.currentThread()) {
+            throw new IllegalStateException("Upgradable read lock is already held by this thread");
+        }
+        waitStrategy.acquireUninterruptibly(upgradeMutex);
+        upgradeOwner = Thread.currentThread();
+        acquireRead(reader, false, 0L);
+    }
+
+    /**
+     * upgradableReadUnLock() for the calling thread's implicit reader handle
+     */
+    public void upgradableReadUnLock() {
+        upgradableReadUnLock(implicitHandle());
+    }
+
+    /**
+     * Releases an upgradable read lock that was not upgraded
+     */
+    public void upgradableReadUnLock(ReaderHandle reader) {
+        if (upgradeOwner != Thread.currentThread()) {
+            throw new IllegalMonitorStateException("upgradableReadUnLock without upgradableReadLock");
+        }
+        readUnLock(reader);
+        releaseUpgradeGate();
+        pumpAsync();
+    }
+
+    /**
+     * upgrade() for the calling thread's implicit reader handle
+     */
+    public void upgrade() {
+        upgrade(implicitHandle());
+    }
+
+    /**
+     * Turns the upgradable read lock into the write lock; release with writeUnLock()
+     * The read hold is dropped (marking the current version read) and exclusive access is
+     * taken with the upgrading flag set - a writer that gets in first backs off without
+     * writing, so the data cannot change in between; only the remaining plain readers are drained
+     */
+    public void upgrade(ReaderHandle reader) {
+        if (upgradeOwner != Thread.currentThread()) {
+            throw new IllegalMonitorStateException("upgrade without upgradableReadLock");
+        }
+        if (reader.holds != 1) {
+            throw new IllegalStateException("upgrade needs the upgradable hold to be the handle's only hold");
+        }
+        upgrading = true;
+        readUnLock(reader);
+        acquireWrite(false, 0L, true);
+        upgrading = false;
+        wakeWaiters(upgradeWaiters);
+        releaseUpgradeGate();  // Our write hold now keeps the next upgradable reader out
+    }
+
+    /**
+     * Releases the upgrade gate, held by the upgradable reader
+     */
+    private void releaseUpgradeGate() {
+        upgradeOwner = null;
+        upgradeMutex.release();
+    }
+
+    /**
+     * Acquires write lock only if it is available without waiting
+     */
+    public boolean tryWriteLock() {
+        return tryWriteLock(0L);
+    }
+
+    /**
+     * Acquires write lock if it becomes available within the timeout
+     * The deadline covers both getting S and draining pending readers
+     * Returns false (holding nothing) on timeout or interrupt; an interrupt is re-asserted
+     */
+    public boolean tryWriteLock(long timeoutNanos) {
+        if (acquireWrite(true, System.nanoTime() + timeoutNanos, false)) {
+            return true;
+        }
+        pumpAsync();  // We may have briefly held S while an async waiter tried
+        return false;
+    }
+
+    /**
+     * Shared write acquisition; untimed callers always succeed
+     * gateHeld is true when upgrading, i.e. the caller holds the upgrade gate and set upgrading
+     */
+    private boolean acquireWrite(boolean timed, long deadline, boolean gateHeld) {
+        if (writeOwner == Thread.currentThread()) {
+            writeHolds++;  // Re-entry: no shared state touched
+            return true;
+        }
+        if (!gateHeld && upgradeOwner == Thread.currentThread()) {
+            throw new IllegalStateException("Use upgrade() to write while holding the upgradable read lock");
+        }
+        while (true) {
+            if (!acquireDrained(timed, deadline)) {
+                return false;
+            }
+            if (gateHeld || !upgrading) {
+                break;
+            }
+            // An upgrading reader dropped its read hold for us to get in: let it write first
+            // Nothing was written yet, so backing off and queueing again is invisible to readers;
+            // upgrade() unparks us once it holds the write lock
+            abandonWrite();
+            if (!awaitHandOff(upgradeWaiters, () -> !upgrading, timed, deadline)) {
+                return false;
+            }
+        }
+
+        // STEP 3: Mark the data as being modified so optimistic readers fail validation
+        // The fence keeps the caller's data writes from becoming visible before the odd value
+        sequence++;
+        VarHandle.storeStoreFence();
+        holdStarted();
+        writeOwner = Thread.currentThread();
+        writeHolds = 1;
+        return true;
+    }
+
+    /**
+     * Steps 1 and 2 of a write: exclusive access, then no pending reader left
+     * Returns false holding nothing on timeout
      */
-    private int readCount = 0;
+    private boolean acquireDrained(boolean timed, long deadline) {
+        // STEP 1: Acquire exclusive access via semaphore S (or PF-T tickets)
+        // This prevents new readers from starting
+        // In reader-biased mode, announce first so new readers stop taking the fast path
+        if (readerBiased) {
+            writersPresent.incrementAndGet();
+        }
+        if (!acquireExclusive(timed, deadline)) {
+            if (readerBiased) {
+                writersPresent.decrementAndGet();
+            }
+            return false;
+        }
+
+        // In reader-biased mode, wait for fast-path readers to leave their stripes
+        if (readerBiased && !awaitStripesDrained(timed, deadline)) {
+            abandonWrite();
+            return false;
+        }
+
+        // STEP 2: Wait for all pending readers to complete
+        // Instead of polling, the writer registers itself and parks (on drained, or on
+        // pendingDrainWaiters with lock-free counters); the last pending reader wakes it
+        if (lockFreeCounters
+                && !awaitHandOff(pendingDrainWaiters, () -> pendingCount.sum() == 0, timed, deadline)) {
+            abandonWrite();
+            return false;
+        }
+        waitStrategy.acquireUninterruptibly(dataMutex);
+        if (pendingReaders == 0) {
+            // All readers done - safe to proceed with writing
+            dataMutex.release();
+        } else {
+            // Still have pending readers - wait for the hand-off
+            writerWaitingForDrain = true;
+            dataMutex.release();
+            if (!take(drained, timed, deadline) && !withdrawFromDrain()) {
+                abandonWrite();
+                return false;
+            }
+        }
+        return true;
+    }
 
     /**
-     * Tracks which readers have completed reading the current data version
-     * Enforces "readers must read the same data only once" requirement
+     * Excludes readers and other writers: PF-T tickets under PHASE_FAIR, otherwise
+     * the policy step followed by S
      */
-    private final Set<String> readersWhoReadCurrentVersion = new HashSet<>();
+    private boolean acquireExclusive(boolean timed, long deadline) {
+        if (policy == Policy.PHASE_FAIR) {
+            return phaseFairWriteLock(timed, deadline);
+        }
+        if (!enterWriterPolicy(timed, deadline)) {
+            return false;
+        }
+        if (!take(S, timed, deadline)) {
+            if (cohortAdmission) {
+                admitStrandedCohort();
+            }
+            leaveWriterPolicy();
+            return false;
+        }
+        return true;
+    }
 
     /**
-     * Count of readers who still need to read the current data version
-     * Writers must wait until this reaches zero (data persistence requirement)
+     * Undoes acquireExclusive()
      */
-    private int pendingReaders = 0;
+    private void releaseExclusive() {
+        if (policy == Policy.PHASE_FAIR) {
+            phaseFairWriteUnLock();
+            return;
+        }
+        releaseS(true);
+        leaveWriterPolicy();
+    }
 
-    // READER METHODS
+    /**
+     * Called when a timed writer gives up waiting on drained
+     * Returns true if the last pending reader handed off concurrently - the permit is
+     * then already released, so the writer takes it and proceeds after all
+     */
+    private boolean withdrawFromDrain() {
+        waitStrategy.acquireUninterruptibly(dataMutex);
+        boolean handedOff = !writerWaitingForDrain;
+        writerWaitingForDrain = false;
+        dataMutex.release();
+        if (handedOff) {
+            drained.acquireUninterruptibly();
+        }
+        return handedOff;
+    }
 
     /**
-     * Acquires read lock - allows concurrent reading
-     * Blocks if a writer is currently writing
+     * Undoes a partial write acquisition: releases exclusive access and the bias revocation
      */
-    public void readLock() {
-        try {
-            // Note: Fair semaphore ensures writers are not starved even if readers arrive continuously
+    private void abandonWrite() {
+        releaseExclusive();
+        if (readerBiased) {
+            writersPresent.decrementAndGet();
+        }
+    }
+
+    /**
+     * Releases write lock after writing completes
+     * Publishes a new data version so new readers can read the updated data
+     */
+    public void writeUnLock() {
+        if (writeOwner != Thread.currentThread()) {
+            throw new IllegalMonitorStateException("writeUnLock without writeLock");
+        }
+        if (--writeHolds > 0) {
+            return;  // Still held by an outer writeLock() or a read inside the write
+        }
+        writeOwner = null;
+        releaseWrite();
+        pumpAsync();
+    }
+
+    /**
+     * Releases exclusive access once the last write hold is gone (sync or async)
+     */
+    private void releaseWrite() {
+        // STEP 1: Start a new version
+        publishVersion();
+
+        // STEP 2: Release exclusive access
+        // Allows either next writer or new readers to proceed
+        holdEnded();
+        releaseExclusive();
+        if (readerBiased) {
+            writersPresent.decrementAndGet();  // Re-enable the fast path once no writer is left
+        }
+    }
+
+    /**
+     * Starts a new version - O(1), no per-reader state is touched
+     * Every record now holds an older version, so no one has read the new one yet
+     */
+    private void publishVersion() {
+        waitStrategy.acquireUninterruptibly(dataMutex);
+        pendingReaders = 0;  // Reset pending count
+        if (lockFreeCounters) {
+            pendingCount.reset();  // Quiescent: no reader holds the lock while we write
+        }
+        sequence++;          // Publish the new version (even again)
+        if (readBitmap != null) {
+            readBitmap.reset();  // Epoch bump, also O(1)
+        }
+        dataMutex.release();
+    }
+
+    /**
+     * downgrade() for the calling thread's implicit reader handle
+     */
+    public void downgrade() {
+        downgrade(implicitHandle());
+    }
+
+    /**
+     * Converts the write hold into a read hold on reader without releasing the lock in between
+     * The write is published as a new version and the reader is registered as pending for it
+     * before anything is released, so no other writer can overwrite it before it is read back
+     * Readers waiting for this writer are let in alongside; release with readUnLock(reader)
+     * Needs exactly one write hold (no nested writeLock() or reads inside the write)
+     */
+    public void downgrade(ReaderHandle reader) {
+        checkOwner(reader);
+        if (writeOwner != Thread.currentThread()) {
+            throw new IllegalMonitorStateException("downgrade without writeLock");
+        }
+        if (writeHolds != 1 || reader.holds != 0) {
+            throw new IllegalStateException("downgrade needs a single write hold and an idle reader handle");
+        }
+        writeOwner = null;
+        writeHolds = 0;
+
+        // STEP 1: Publish the write and become a pending reader of it
+        publishVersion();
+        registerPending(reader);
 
-            // STEP 1: Update reader count safely
-            mutex.acquire();
-            readCount++;
+        // STEP 2: Swap the exclusive hold for a read hold
+        holdEnded();
+        if (policy == Policy.PHASE_FAIR) {
+            // Count ourselves into the next read phase and end the write phase in one update
+            phaseIn.addAndGet(PF_READER - (phaseIn.get() & PF_WRITER_BITS));
+            wakeWaiters(phaseReaderWaiters);
+            writerServing.incrementAndGet();
+            wakeWaiters(phaseTicketWaiters);
+        } else {
+            reader.pendingOnly = !openGroupFromWrite();
+            leaveWriterPolicy();
+        }
+        if (readerBiased) {
+            writersPresent.decrementAndGet();
+        }
+        reader.holds = 1;
+        pumpAsync();
+    }
 
-            // First reader blocks writers by acquiring S
-            if (readCount == 1) {
-                S.acquire();  // Block writers
+    /**
+     * Turns the writer's S into the reader group's S, with the downgrading writer as a member
+     * - cohort mode: the queued cohort is admitted together with us
+     * - otherwise, if we are the first reader, S simply stays held for the group
+     * Returns false if a reader has already counted itself as the group's first reader and
+     * is blocked on S (mutex path): S is then released instead and we do not join the count.
+     * Our read stays protected by the pending registration - whichever writer gets S next
+     * must wait for us before writing
+     */
+    private boolean openGroupFromWrite() {
+        if (cohortAdmission) {
+            ReaderCohort admitted;
+            cohortLock.lock();
+            try {
+                admitted = admitCohort(1);
+            } finally {
+                cohortLock.unlock();
             }
-            mutex.release();
+            if (admitted != null) {
+                wakeCohort(admitted);
+            }
+            return true;
+        }
+        if (readCount.compareAndSet(0, 1)) {
+            holdStarted();
+            return true;
+        }
+        S.release();
+        return false;
+    }
+
+    // ASYNC METHODS
+
+    /**
+     * Async read lock for a reader handle registered just for this permit (and unregistered
+     * again on release); completes once the read lock is granted
+     */
+    public CompletableFuture<Permit> readLockAsync() {
+        return enqueueAsync(registerReader(), true);
+    }
+
+    /**
+     * Async read lock for an explicit handle, keeping its single-read record
+     * The handle must not be used by a thread while the request is outstanding
+     */
+    public CompletableFuture<Permit> readLockAsync(ReaderHandle reader) {
+        checkOwner(reader);
+        return enqueueAsync(reader, false);
+    }
+
+    /**
+     * Async write lock; completes once the writer is exclusive and every pending reader
+     * has read the current version, exactly like writeLock()
+     * The permit is not tied to a thread: release it from any thread, and do not call the
+     * blocking lock methods while holding it
+     */
+    public CompletableFuture<Permit> writeLockAsync() {
+        return enqueueAsync(null, false);
+    }
+
+    /**
+     * Queues a waiter and tries to grant it right away
+     * Cancelling the future withdraws the request (or releases the permit if granted meanwhile)
+     */
+    private CompletableFuture<Permit> enqueueAsync(ReaderHandle reader, boolean ownsHandle) {
+        AsyncWaiter waiter = new AsyncWaiter(reader, ownsHandle);
+        asyncWaiters.add(waiter);
+        pumpAsync();
+        return waiter.future;
+    }
 
-            // STEP 2: Register this reader as "pending" for current data version
-            // This implements: "Writer must ensure data not yet read by all readers is not overwritten"
-            dataMutex.acquire();
-            String readerName = Thread.currentThread().getName();
+    /**
+     * Grants queued async waiters; called after every release and every failed try
+     * Only one thread pumps at a time; concurrent calls just leave a request behind
+     */
+    private void pumpAsync() {
+        if (asyncWaiters.isEmpty() || asyncPumpRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            grantAsync();
+            requests = asyncPumpRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
 
-            // Only count as pending if this reader hasn't read current version yet
-            if (!readersWhoReadCurrentVersion.contains(readerName)) {
-                pendingReaders++;
+    /**
+     * Grants waiters in FIFO order until the head cannot be granted yet
+     * A waiter first takes what it can without blocking (read hold, or the writer's
+     * exclusive part), then waits - without a thread - for its ready condition,
+     * re-checked on each pump (e.g. a writer's pending-reader drain)
+     */
+    private void grantAsync() {
+        AsyncWaiter waiter;
+        while ((waiter = asyncWaiters.peek()) != null) {
+            if (waiter.ready == null) {
+                if (waiter.future.isDone()) {
+                    asyncWaiters.poll();  // Cancelled before it held anything
+                    if (waiter.ownsHandle) {
+                        unregisterReader(waiter.reader);
+                    }
+                    continue;
+                }
+                waiter.ready = waiter.reader != null ? tryAsyncRead(waiter.reader) : tryAsyncWrite();
+                if (waiter.ready == null) {
+                    return;
+                }
             }
-            dataMutex.release();
+            if (!waiter.ready.getAsBoolean()) {
+                return;
+            }
+            if (waiter.reader == null && upgrading) {
+                // Same back-off as acquireWrite(); the upgraded writer's release pumps again
+                abandonWrite();
+                waiter.ready = null;
+                return;
+            }
+            asyncWaiters.poll();
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("readLock interrupted: " + e.getMessage());
+            if (waiter.reader == null) {
+                // Same as the end of acquireWrite(): optimistic readers must see the write start
+                sequence++;
+                VarHandle.storeStoreFence();
+                holdStarted();
+            }
+            Permit permit = new Permit(this, waiter.reader, waiter.ownsHandle);
+            if (!waiter.future.complete(permit)) {
+                permit.release();  // Cancelled while we were granting it
+            }
         }
     }
 
     /**
-     * Releases read lock after reading completes
-     * Updates tracking data and releases S if this is the last reader
+     * Non-blocking read attempt; returns null if the read lock is not available yet
      */
-    public void readUnLock() {
-        try {
-            // STEP 1: Mark this reader as having completed current version
-            dataMutex.acquire();
-            String readerName = Thread.currentThread().getName();
+    private BooleanSupplier tryAsyncRead(ReaderHandle reader) {
+        if (reader.holds > 0) {
+            reader.holds++;
+            return GRANTED;
+        }
+        if (policy == Policy.PHASE_FAIR) {
+            // Enter only between writer phases; the writer's release pumps again
+            if ((phaseIn.get() & PF_WRITER_BITS) != 0) {
+                return null;
+            }
+            long writerBits = phaseIn.getAndAdd(PF_READER) & PF_WRITER_BITS;
+            reader.holds = 1;
+            if (writerBits == 0) {
+                registerPending(reader);
+                return GRANTED;
+            }
+            // A writer arrived just before us: we are counted, so wait out its phase
+            return () -> {
+                if ((phaseIn.get() & PF_WRITER_BITS) == writerBits) {
+                    return false;
+                }
+                registerPending(reader);
+                return true;
+            };
+        }
+        if (!acquireFirstRead(reader, true, System.nanoTime())) {
+            return null;
+        }
+        reader.holds = 1;
+        return GRANTED;
+    }
 
-            // Only update if not already marked complete
-            // This enforces "readers must read the same data only once"
-            if (!readersWhoReadCurrentVersion.contains(readerName)) {
-                readersWhoReadCurrentVersion.add(readerName);
-                pendingReaders--;
+    /**
+     * Non-blocking attempt at the writer's exclusive part (S or a PF-T ticket)
+     * Returns null if it is not available yet, otherwise the drain condition still to wait for
+     */
+    private BooleanSupplier tryAsyncWrite() {
+        if (upgrading) {
+            return null;
+        }
+        if (readerBiased) {
+            writersPresent.incrementAndGet();
+        }
+        long readersBefore = -1;
+        boolean exclusive;
+        if (policy == Policy.PHASE_FAIR) {
+            long ticket = writerServing.get();
+            exclusive = writerTicket.compareAndSet(ticket, ticket + 1);
+            if (exclusive) {
+                readersBefore = phaseIn.getAndAdd(PF_PRESENT | (ticket & PF_PHASE_ID)) & ~PF_WRITER_BITS;
             }
-            dataMutex.release();
+        } else {
+            exclusive = acquireExclusive(true, System.nanoTime());
+        }
+        if (!exclusive) {
+            if (readerBiased) {
+                writersPresent.decrementAndGet();
+            }
+            return null;
+        }
 
-            // STEP 2: Decrement reader count
-            mutex.acquire();
-            readCount--;
+        long phaseReaders = readersBefore;
+        return () -> (phaseReaders < 0 || phaseOut.get() == phaseReaders)
+                && (!readerBiased || stripesEmpty())
+                && pendingDrained();
+    }
 
-            // Last reader releases S to allow writers
-            if (readCount == 0) {
-                S.release();  // Unblock writers
+    /**
+     * True if no fast-path reader is inside (reader-biased mode)
+     */
+    private boolean stripesEmpty() {
+        for (int i = 0; i < readerStripes.length(); i += STRIPE_PADDING) {
+            if (readerStripes.get(i) != 0) {
+                return false;
             }
-            mutex.release();
+        }
+        return true;
+    }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("readUnLock interrupted: " + e.getMessage());
+    /**
+     * True if every pending reader has read the current version
+     */
+    private boolean pendingDrained() {
+        if (lockFreeCounters) {
+            return pendingCount.sum() == 0;
         }
+        waitStrategy.acquireUninterruptibly(dataMutex);
+        boolean drained = pendingReaders == 0;
+        dataMutex.release();
+        return drained;
     }
 
+    // COMBINING WRITE METHODS
 
-    // WRITER METHODS
+    /**
+     * Runs op with exclusive access, batched with the operations of other write(op) callers
+     * The caller queues its operation; whichever caller gets the combiner role takes
+     * writeLock() once, runs up to MAX_COMBINED_WRITES queued operations in arrival order
+     * and publishes one new data version for the whole batch, so queued writers share a
+     * single hand-off and a single pending-reader drain
+     * Readers see the combined result of a batch, never the states in between
+     * An exception thrown by op is rethrown to its own caller; the rest of the batch still runs
+     * op runs under the combiner's write hold, so it may re-enter the lock (nested write(op)
+     * calls run inline)
+     */
+    public void write(Runnable op) {
+        if (writeOwner == Thread.currentThread()) {
+            op.run();
+            return;
+        }
+        WriteRequest request = new WriteRequest(op, Thread.currentThread());
+        writeRequests.add(request);
 
+        while (!request.done) {
+            if (combining.compareAndSet(false, true)) {
+                combine();
+            } else {
+                LockSupport.park(this);  // Woken when the request is done or the combiner leaves
+            }
+        }
+
+        if (request.failure instanceof RuntimeException) {
+            throw (RuntimeException) request.failure;
+        }
+        if (request.failure instanceof Error) {
+            throw (Error) request.failure;
+        }
+    }
 
     /**
-     * Acquires write lock for exclusive access
-     * Blocks until:
-     * 1. All active readers complete (readCount == 0)
-     * 2. All pending readers finish current version (pendingReaders == 0)
-     * 3. No other writer is active
-     * This implements: "Writer must ensure data not yet read by all readers is not overwritten"
+     * One combining pass: a single exclusive section for a batch of queued operations
+     * Called with the combiner role held; gives the role up before returning
      */
-    public void writeLock() {
+    private void combine() {
         try {
-            // STEP 1: Acquire exclusive access via semaphore S
-            // This prevents new readers from starting
-            S.acquire();
-
-            // STEP 2: Wait for all pending readers to complete
-            // Use polling because project restricts us to semaphores only
-            // (No condition variables allowed per specification)
-            boolean waitingForReaders = true;
-            while (waitingForReaders) {
-                dataMutex.acquire();
-
-                if (pendingReaders == 0) {
-                    // All readers done - safe to proceed with writing
-                    waitingForReaders = false;
-                } else {
-                    // Still have pending readers - must wait
-                    dataMutex.release();
-
-                    // Brief sleep to avoid busy-waiting and excessive CPU usage
-                    // This is a standard practice and doesn't violate semaphore-only requirement
-                    Thread.sleep(50);
-                    continue;
+            if (writeRequests.isEmpty()) {
+                return;  // A previous combiner already ran our operation
+            }
+            writeLock();
+            try {
+                WriteRequest next;
+                for (int i = 0; i < MAX_COMBINED_WRITES && (next = writeRequests.poll()) != null; i++) {
+                    try {
+                        next.op.run();
+                    } catch (Throwable t) {
+                        next.failure = t;
+                    }
+                    next.done = true;
+                    LockSupport.unpark(next.waiter);
                 }
-                dataMutex.release();
+            } finally {
+                writeUnLock();
             }
+        } finally {
+            combining.set(false);
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("writeLock interrupted: " + e.getMessage());
+            // A submitter that queued while we held the role may have parked; hand the role on
+            // (combining and the queue are both volatile, so it sees one or the other)
+            WriteRequest waiting = writeRequests.peek();
+            if (waiting != null) {
+                LockSupport.unpark(waiting.waiter);
+            }
         }
     }
 
+    // OPTIMISTIC READ METHODS
+
     /**
-     * Releases write lock after writing completes
-     * Resets version tracking so new readers can read the updated data
+     * Returns a stamp for an optimistic read, or 0 if a writer is currently writing
+     * Touches no shared writeable state: just one volatile read of sequence
+     * Optimistic readers are never pending, so they never delay writers
      */
-    public void writeUnLock() {
-        try {
-            // STEP 1: Reset tracking data for new version
-            dataMutex.acquire();
-            readersWhoReadCurrentVersion.clear();  // New version, so no one has read it yet
-            pendingReaders = 0;                     // Reset pending count
-            dataMutex.release();
+    public long tryOptimisticRead() {
+        long stamp = sequence;
+        return (stamp & 1) == 0 ? stamp : 0;
+    }
 
-            // STEP 2: Release exclusive access
-            // Allows either next writer or new readers to proceed
-            S.release();
+    /**
+     * Returns true if no writer has started writing since the stamp was issued
+     * The acquire fence keeps the caller's data reads from moving after the check
+     */
+    public boolean validate(long stamp) {
+        VarHandle.acquireFence();
+        return stamp != 0 && sequence == stamp;
+    }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("writeUnLock interrupted: " + e.getMessage());
+    /**
+     * validateAndMarkRead() for the calling thread's implicit reader handle
+     */
+    public boolean validateAndMarkRead(long stamp) {
+        return validateAndMarkRead(implicitHandle(), stamp);
+    }
+
+    /**
+     * validate(), plus single-read bookkeeping for readers that opt in:
+     * if the stamp is still current, the reader is recorded as having read this version
+     * Checked under dataMutex so a concurrent writeUnLock() cannot publish a version in between
+     */
+    public boolean validateAndMarkRead(ReaderHandle reader, long stamp) {
+        checkOwner(reader);
+        if (!validate(stamp)) {
+            return false;
+        }
+        waitStrategy.acquireUninterruptibly(dataMutex);
+        boolean valid = sequence == stamp;
+        if (valid) {
+            markReadCurrentVersion(reader);
+        }
+        dataMutex.release();
+        return valid;
+    }
+
+    /**
+     * Fairness policy between readers and writers
+     */
+    public enum Policy {
+        /**
+         * Original behaviour: fair semaphores hand S over in arrival order, and readers
+         * join an already open reader group without queueing
+         * Balanced throughput and latency; the default
+         */
+        FIFO,
+
+        /**
+         * Readers never wait for a waiting writer, only for an active one: writers queue on a
+         * turnstile first, so readers blocked by a write are admitted before the next writer
+         * Highest read throughput and read latency bound; writers can starve under steady reads
+         */
+        READER_PREFERENCE,
+
+        /**
+         * Once any writer is waiting, new readers block at a gate until all queued writers are done
+         * Freshest data and lowest write latency; readers can starve under steady writes
+         */
+        WRITER_PREFERENCE,
+
+        /**
+         * Non-fair semaphores: an arriving thread may barge ahead of parked ones
+         * Highest raw throughput (fewer hand-offs and context switches), but unbounded
+         * worst-case latency for both sides
+         */
+        UNFAIR,
+
+        /**
+         * Ticket-based phase-fair lock (PF-T): read and write phases alternate whenever both
+         * sides are waiting
+         * - a reader waits for at most one writer phase
+         * - a writer waits for at most one reader phase plus the writers queued ahead of it
+         * Bounded worst-case latency on both sides; all readers blocked by a writer are
+         * released together when it finishes. Waiters spin for the WaitStrategy's budget, then
+         * park and are unparked by the thread that ends the phase, so a hand-off costs one unpark
+         */
+        PHASE_FAIR
+    }
+
+    /**
+     * Construction options for ReadWriteLock
+     */
+    public static final class Options {
+        private Policy policy = Policy.FIFO;
+        private boolean readerBiased = false;
+        private boolean bitmapTracking = false;
+        private boolean lockFreeCounters = false;
+        private boolean cohortAdmission = false;
+        private WaitStrategy waitStrategy = null;
+
+        /**
+         * Fairness policy; defaults to Policy.FIFO
+         * With readerBiased, the policy applies to readers that fall back to the semaphore path
+         */
+        public Options policy(Policy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * Reader-biased mode suits read-dominated workloads: reads scale with cores because
+         * they touch only their own stripe, while every write pays a scan of all stripes
+         */
+        public Options readerBiased(boolean readerBiased) {
+            this.readerBiased = readerBiased;
+            return this;
+        }
+
+        /**
+         * Tracks "has read the current version" in a ReaderBitmap (one bit per reader slot)
+         * instead of in each ReaderHandle
+         * Saves no memory (the handles remain) and a first read of a version CASes a word shared
+         * by 48 neighbouring slots; use it when the read records must live in one structure
+         */
+        public Options bitmapTracking(boolean bitmapTracking) {
+            this.bitmapTracking = bitmapTracking;
+            return this;
+        }
+
+        /**
+         * Keeps readCount in an AtomicInteger and pendingReaders in a LongAdder
+         * Readers no longer queue on mutex and dataMutex; only the first reader of a
+         * group takes mutex, because it may have to wait for S
+         */
+        public Options lockFreeCounters(boolean lockFreeCounters) {
+            this.lockFreeCounters = lockFreeCounters;
+            return this;
+        }
+
+        /**
+         * Readers that arrive while a writer holds S queue in a cohort; when the writer
+         * finishes, S passes to the whole cohort with one readCount update and a bulk unpark,
+         * instead of readers trickling in one at a time through mutex
+         * Joining an open reader group is then a single CAS, as with lockFreeCounters
+         * Ignored under Policy.PHASE_FAIR, which already releases blocked readers together
+         */
+        public Options cohortAdmission(boolean cohortAdmission) {
+            this.cohortAdmission = cohortAdmission;
+            return this;
+        }
+
+        /**
+         * How contended threads wait; defaults to WaitStrategy.blocking()
+         * WaitStrategy.spinThenPark() suits critical sections of a few microseconds
+         */
+        public Options waitStrategy(WaitStrategy waitStrategy) {
+            this.waitStrategy = waitStrategy;
+            return this;
+        }
+    }
+
+    /**
+     * A granted async lock hold, released with release() from any thread
+     */
+    public static final class Permit {
+        private final ReadWriteLock lock;
+
+        /**
+         * Handle of a read permit; null for a write permit
+         */
+        private final ReaderHandle reader;
+        private final boolean ownsHandle;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(ReadWriteLock lock, ReaderHandle reader, boolean ownsHandle) {
+            this.lock = lock;
+            this.reader = reader;
+            this.ownsHandle = ownsHandle;
+        }
+
+        /**
+         * True for a write permit
+         */
+        public boolean isWrite() {
+            return reader == null;
+        }
+
+        /**
+         * Releases the hold; a write permit publishes a new data version, like writeUnLock()
+         */
+        public void release() {
+            if (!released.compareAndSet(false, true)) {
+                throw new IllegalStateException("Permit already released");
+            }
+            if (reader == null) {
+                lock.releaseWrite();
+                lock.pumpAsync();
+                return;
+            }
+            lock.readUnLock(reader);
+            if (ownsHandle) {
+                lock.unregisterReader(reader);
+            }
+        }
+    }
+
+    /**
+     * A queued readLockAsync()/writeLockAsync() request
+     * ready is only touched by the pumping thread
+     */
+    private static final class AsyncWaiter {
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+        private final ReaderHandle reader;
+        private final boolean ownsHandle;
+
+        /**
+         * Null until the waiter holds its non-blocking part, then the condition still to wait for
+         */
+        private BooleanSupplier ready;
+
+        private AsyncWaiter(ReaderHandle reader, boolean ownsHandle) {
+            this.reader = reader;
+            this.ownsHandle = ownsHandle;
+        }
+    }
+
+    /**
+     * Readers queued for one hand-off of S
+     * The waiter list is guarded by cohortLock and frozen once admitted is set
+     */
+    private static final class ReaderCohort {
+        private final ArrayList<Thread> waiters = new ArrayList<>();
+        private volatile boolean admitted = false;
+    }
+
+    /**
+     * An operation queued by write(op), with its outcome
+     * done is volatile so the submitter sees failure once it sees done
+     */
+    private static final class WriteRequest {
+        private final Runnable op;
+        private final Thread waiter;
+        private Throwable failure;
+        private volatile boolean done = false;
+
+        private WriteRequest(Runnable op, Thread waiter) {
+            this.op = op;
+            this.waiter = waiter;
+        }
+    }
+
+    /**
+     * Reader handle returned by registerReader()
+     * Holds the reader's dense slot and its single-read record; a handle is used
+     * by one thread at a time, so its fields need no synchronization of their own
+     */
+    public static final class ReaderHandle {
+        private final ReadWriteLock owner;
+        private int slot;
+
+        /**
+         * Last data version this reader has read
+         */
+        private long lastVersionRead = -1;
+
+        /**
+         * Thread of an implicit per-thread handle; null for registerReader() handles
+         */
+        private final Thread thread;
+
+        /**
+         * Read holds of this handle, counting re-entries; only the outermost one touches the lock
+         */
+        private int holds = 0;
+
+        /**
+         * Outermost hold was taken through the reader-biased fast path (0 or 1)
+         */
+        private int fastHolds = 0;
+
+        /**
+         * Outermost hold was taken by the write lock holder and counts as a write hold
+         */
+        private boolean writeBacked = false;
+
+        /**
+         * Outermost hold came from downgrade() and is held through the pending mark alone
+         */
+        private boolean pendingOnly = false;
+
+        private ReaderHandle(ReadWriteLock owner, int slot, Thread thread) {
+            this.owner = owner;
+            this.slot = slot;
+            this.thread = thread;
+        }
+
+        /**
+         * Dense slot index of this reader (0 .. number of registered readers)
+         */
+        public int slot() {
+            return slot;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * ReaderBitmap: "Has read the current version" flags for up to millions of readers
+ * One bit per reader slot, stored in plain long[] pages and updated with atomic word CAS
+ * (the bitmap itself is about 170 KB per million slots; the readers' handles are extra)
+ * Word layout:
+ * - bits  0..47: one flag per reader slot
+ * - bits 48..63: epoch tag - flags only count if the tag equals the current epoch
+ * Starting a new version bumps the epoch (O(1)); stale words are treated as empty and
+ * are overwritten lazily by the next markRead() that touches them
+ */
+public class ReaderBitmap {
+
+    // WORD ENCODING
+
+    private static final int BITS_PER_WORD = 48;
+    private static final int EPOCH_SHIFT = 48;
+    private static final long EPOCH_MASK = 0xFFFFL;
+    private static final long BITS_MASK = (1L << BITS_PER_WORD) - 1;
+
+    /**
+     * Words per page - pages are never moved, so concurrent CAS never races a resize
+     */
+    private static final int PAGE_WORDS = 1024;
+    private static final int PAGE_READERS = PAGE_WORDS * BITS_PER_WORD;
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // STATE VARIABLES
+
+    /**
+     * Page directory; replaced (never mutated) when capacity grows
+     */
+    private volatile long[][] pages = new long[0][];
+
+    /**
+     * Current epoch (16 bits); only changed by reset()
+     */
+    private volatile long epoch = 1;
+
+    /**
+     * Makes sure slots 0 .. readers - 1 have backing words
+     * Must not run concurrently with itself (callers serialize registration)
+     */
+    public void ensureCapacity(int readers) {
+        long[][] current = pages;
+        int needed = (readers + PAGE_READERS - 1) / PAGE_READERS;
+        if (needed <= current.length) {
+            return;
+        }
+        long[][] grown = Arrays.copyOf(current, needed);
+        for (int i = current.length; i < needed; i++) {
+            grown[i] = new long[PAGE_WORDS];  // All zero: epoch 0, which is never current after a reset
+        }
+        pages = grown;
+    }
+
+    /**
+     * Marks a reader as having read the current version
+     * Returns true if this is its first read of the version
+     */
+    public boolean markRead(int slot) {
+        long[] page = pages[slot / PAGE_READERS];
+        int word = (slot % PAGE_READERS) / BITS_PER_WORD;
+        long bit = 1L << (slot % BITS_PER_WORD);
+        long tag = epoch << EPOCH_SHIFT;
+
+        while (true) {
+            long w = (long) WORDS.getVolatile(page, word);
+            long current = (w & ~BITS_MASK) == tag ? w : tag;  // Stale epoch means no flags set
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (WORDS.compareAndSet(page, word, w, current | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the reader has read the current version
+     */
+    public boolean hasRead(int slot) {
+        long[] page = pages[slot / PAGE_READERS];
+        long w = (long) WORDS.getVolatile(page, (slot % PAGE_READERS) / BITS_PER_WORD);
+        return (w & ~BITS_MASK) == epoch << EPOCH_SHIFT && (w & (1L << (slot % BITS_PER_WORD))) != 0;
+    }
+
+    /**
+     * Clears one reader's flag, e.g. before its slot is reused by a new reader
+     */
+    public void clear(int slot) {
+        long[] page = pages[slot / PAGE_READERS];
+        int word = (slot % PAGE_READERS) / BITS_PER_WORD;
+        long bit = 1L << (slot % BITS_PER_WORD);
+        long w;
+        do {
+            w = (long) WORDS.getVolatile(page, word);
+        } while ((w & bit) != 0 && !WORDS.compareAndSet(page, word, w, w & ~bit));
+    }
+
+    /**
+     * Starts a new version: every reader becomes "not read yet" with one increment
+     * Once every 65535 versions the epoch wraps, and all words are zeroed so that
+     * no stale tag can alias the new epoch
+     * Must not run concurrently with markRead() (the lock's writer is exclusive here)
+     */
+    public void reset() {
+        long next = (epoch + 1) & EPOCH_MASK;
+        if (next == 0) {
+            for (long[] page : pages) {
+                Arrays.fill(page, 0L);
+            }
+            next = 1;
+        }
+        epoch = next;
+    }
+}
@@ -1,3 +1,11 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Test class for ReadWriteLock implementation
  * Demonstrates correct behavior of the Readers-Writers solution
@@ -9,11 +17,33 @@
  * 1. Multiple readers can read concurrently
  * 2. Writers execute exclusively (one at a time, no readers)
  * 3. Writers wait for all pending readers to complete
+ * Virtual-thread mode (JDK 21+): java Test vthreads [readers]
+ * - one virtual reader thread per reader (default 1,000,000), all holding the read lock at once
+ * Writer-preference order check: java Test order
+ * - W1 and W2 queue behind a reader, then R1 arrives; the grant order must be W1, W2, R1
+ * Ring-buffer check: java Test ring
+ * - 4 writers publish while readers register, read and unregister in a loop (capacities 1, 2, 4);
+ *   every reader must get each version in order, and none may wait for one forever
+ * - then, with a LagPolicy, a slow reader is evicted over and over; it must resume where
+ *   MissedVersionsException says and keep reading
  */
 public class Test {
 
     public static void main(String[] args) {
 
+        if (args.length > 0 && args[0].equals("vthreads")) {
+            VirtualReaders.run(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("order")) {
+            WriterPreferenceOrder.run();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("ring")) {
+            RingBroadcast.run();
+            return;
+        }
+
         System.out.println("=== Fair Reader-Writer Lock Test (No Starvation Guaranteed) ===");
 
 
@@ -117,4 +147,390 @@ public class Test {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Writer-preference order check - queued writers must all go before a reader that arrived after them
+     * main holds the read lock while W1, W2 and then R1 queue (one at a time, so their arrival order is known);
+     * once main releases, both writers must be granted before R1
+     */
+    static class WriterPreferenceOrder {
+
+        static void run() {
+            System.out.println("=== Writer-Preference Grant Order ===");
+
+            ReadWriteLock rwLock = new ReadWriteLock(new ReadWriteLock.Options().policy(ReadWriteLock.Policy.WRITER_PREFERENCE));
+            List<String> granted = new ArrayList<>();
+
+            rwLock.readLock();
+            Thread[] threads = {
+                    new Thread(() -> record(granted, rwLock, true), "W1"),
+                    new Thread(() -> record(granted, rwLock, true), "W2"),
+                    new Thread(() -> record(granted, rwLock, false), "R1")
+            };
+            for (Thread thread : threads) {
+                thread.start();
+                try {
+                    Thread.sleep(200);  // Let it queue before the next one arrives
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            rwLock.readUnLock();
+
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            System.out.println("Grant order: " + granted);
+            if (!granted.equals(List.of("W1", "W2", "R1"))) {
+                System.err.println("Expected [W1, W2, R1]: a queued writer lost its place!");
+                return;
+            }
+            System.out.println("  All threads completed successfully!");
+        }
+
+        private static void record(List<String> granted, ReadWriteLock rwLock, boolean write) {
+            if (write) {
+                rwLock.writeLock();
+            } else {
+                rwLock.readLock();
+            }
+            synchronized (granted) {
+                granted.add(Thread.currentThread().getName());
+            }
+            try {
+                Thread.sleep(100);  // Hold it while the others stay queued
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (write) {
+                rwLock.writeUnLock();
+            } else {
+                rwLock.readUnLock();
+            }
+        }
+    }
+
+    /**
+     * Ring-buffer check - a reader must read every version published after it registered, in order
+     * Writer w publishes n * WRITERS + w for n = 0, 1, ..., so a reader must see each writer's n go up
+     * one at a time; readers register, read 20 versions and unregister in a loop for 2 s per capacity
+     * A reader that waits 2 s for a version is reported as a hang
+     * The lag run evicts a reader that naps now and then: its next read must be at the exception's
+     * resumeSequence(), and it must keep reading (not just rejoin) for the whole run
+     */
+    static class RingBroadcast {
+        private static final int WRITERS = 4;
+        private static final int READS_PER_REGISTRATION = 20;
+        private static final long RUN_NANOS = TimeUnit.SECONDS.toNanos(2);
+        private static final long HANG_NANOS = TimeUnit.SECONDS.toNanos(2);
+        private static final long MAX_WRITER_WAIT_MICROS = 200;
+        private static final int READS_PER_NAP = 64;
+
+        private static volatile boolean stopWriters;
+
+        static void run() {
+            System.out.println("=== Broadcast Ring Buffer ===");
+
+            boolean passed = true;
+            for (int capacity : new int[] {1, 2, 4}) {
+                passed &= registrationRun(capacity);
+            }
+            for (int capacity : new int[] {1, 2, 4}) {
+                passed &= lagRun(capacity);
+            }
+            if (passed) {
+                System.out.println("  All threads completed successfully!");
+            }
+        }
+
+        /**
+         * Readers register mid-stream while the writers keep publishing
+         */
+        private static boolean registrationRun(int capacity) {
+            BroadcastRingBuffer<Long> ring = new BroadcastRingBuffer<>(capacity);
+            Thread[] writers = startWriters(ring);
+
+            String failure = null;
+            int registrations = 0;
+            long reads = 0;
+            long end = System.nanoTime() + RUN_NANOS;
+            while (failure == null && System.nanoTime() < end) {
+                BroadcastRingBuffer.Reader reader = ring.registerReader();
+                WriterOrder order = new WriterOrder();
+                for (int i = 0; i < READS_PER_REGISTRATION && failure == null; i++) {
+                    long sequence = reader.nextSequence();
+                    Long value = poll(ring, reader);
+                    if (value == null) {
+                        failure = "reader stuck at sequence " + sequence + " (claimed up to "
+                                + ring.claimedSequence() + "): a hang!";
+                    } else {
+                        failure = order.check(value, sequence);
+                        reads++;
+                    }
+                }
+                ring.unregisterReader(reader);
+                registrations++;
+            }
+            stopWriters(writers);
+
+            System.out.println("Capacity " + capacity + ": " + registrations + " registrations, " + reads + " reads");
+            if (failure != null) {
+                System.err.println("Capacity " + capacity + ": " + failure);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * One reader that naps longer than the writers' maximum wait, so it is evicted again and again
+         */
+        private static boolean lagRun(int capacity) {
+            BroadcastRingBuffer<Long> ring = new BroadcastRingBuffer<>(capacity,
+                    new BroadcastRingBuffer.LagPolicy().maxWriterWait(MAX_WRITER_WAIT_MICROS, TimeUnit.MICROSECONDS));
+            Thread[] writers = startWriters(ring);
+            BroadcastRingBuffer.Reader reader = ring.registerReader();
+            WriterOrder order = new WriterOrder();
+
+            String failure = null;
+            long reads = 0;
+            long rejoins = 0;
+            long resumeSequence = -1;
+            long lastRead = System.nanoTime();
+            long end = lastRead + RUN_NANOS;
+            while (failure == null && System.nanoTime() < end) {
+                long sequence = reader.nextSequence();
+                Long value;
+                try {
+                    value = poll(ring, reader);
+                } catch (BroadcastRingBuffer.MissedVersionsException e) {
+                    rejoins++;
+                    order.gap();
+                    resumeSequence = e.resumeSequence();
+                    if (resumeSequence != reader.nextSequence()) {
+                        failure = "evicted reader resumes at " + reader.nextSequence()
+                                + ", but the exception said " + resumeSequence + "!";
+                    } else if (System.nanoTime() - lastRead > HANG_NANOS) {
+                        failure = "reader only rejoined for 2 s, never read: no progress!";
+                    }
+                    continue;
+                }
+                if (value == null) {
+                    failure = "reader stuck at sequence " + sequence + " (claimed up to "
+                            + ring.claimedSequence() + "): a hang!";
+                } else if (resumeSequence >= 0 && sequence != resumeSequence) {
+                    failure = "first read after rejoining was at sequence " + sequence
+                            + ", not at resumeSequence() " + resumeSequence + "!";
+                } else {
+                    failure = order.check(value, sequence);
+                    resumeSequence = -1;
+                    lastRead = System.nanoTime();
+                    if (++reads % READS_PER_NAP == 0) {
+                        nap();  // Fall behind so a writer evicts us
+                    }
+                }
+            }
+            ring.unregisterReader(reader);
+            stopWriters(writers);
+
+            System.out.println("Capacity " + capacity + " with LagPolicy: " + reads + " reads, " + rejoins + " rejoins");
+            if (failure != null) {
+                System.err.println("Capacity " + capacity + " with LagPolicy: " + failure);
+                return false;
+            }
+            return true;
+        }
+
+        private static void nap() {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Reads the reader's next version, or returns null if none is published within HANG_NANOS
+         */
+        private static Long poll(BroadcastRingBuffer<Long> ring, BroadcastRingBuffer.Reader reader) {
+            long deadline = System.nanoTime() + HANG_NANOS;
+            while (true) {
+                Long value = ring.tryRead(reader);
+                if (value != null) {
+                    return value;
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    return null;
+                }
+                Thread.yield();
+            }
+        }
+
+        private static Thread[] startWriters(BroadcastRingBuffer<Long> ring) {
+            stopWriters = false;
+            Thread[] writers = new Thread[WRITERS];
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                writers[w] = new Thread(() -> {
+                    for (long n = 0; !stopWriters; n++) {
+                        ring.publish(n * WRITERS + writer);
+                    }
+                }, "W" + (w + 1));
+                writers[w].setDaemon(true);  // A hung writer must not keep the JVM alive
+                writers[w].start();
+            }
+            return writers;
+        }
+
+        private static void stopWriters(Thread[] writers) {
+            stopWriters = true;
+            for (Thread writer : writers) {
+                try {
+                    writer.join(HANG_NANOS / 1_000_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Last n read from each writer; versions in between must not be skipped or reordered
+         * After an eviction (gap()), each writer's next n only has to be higher
+         */
+        static class WriterOrder {
+            private final long[] last = new long[WRITERS];
+            private final boolean[] afterGap = new boolean[WRITERS];
+
+            WriterOrder() {
+                Arrays.fill(last, -1);
+            }
+
+            /**
+             * Returns what went wrong with value, read at sequence, or null if it is the writer's next one
+             */
+            String check(long value, long sequence) {
+                int writer = (int) (value % WRITERS);
+                long n = value / WRITERS;
+                long previous = last[writer];
+                boolean skipped = afterGap[writer];
+                last[writer] = n;
+                afterGap[writer] = false;
+                if (previous >= 0 && (skipped ? n <= previous : n != previous + 1)) {
+                    return "W" + (writer + 1) + " version " + n + " read at sequence " + sequence
+                            + " after " + previous + ": versions out of order!";
+                }
+                return null;
+            }
+
+            /**
+             * The reader missed versions
+             */
+            void gap() {
+                Arrays.fill(afterGap, true);
+            }
+        }
+    }
+
+    /**
+     * Virtual-thread scale test - simulates one reader per client subscription
+     * Every reader registers a handle, takes the read lock and waits until all readers hold it;
+     * then a writer must wait for all of them to read and leave
+     * Reports acquisition throughput, heap use per reader and the writer's drain time
+     */
+    static class VirtualReaders {
+
+        static void run(int readers) {
+            // Created reflectively so Test still compiles and runs on JDKs without virtual threads
+            ExecutorService executor;
+            try {
+                executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual-thread mode needs Java 21 or later");
+                return;
+            }
+            run(executor, readers);
+        }
+
+        static void run(ExecutorService executor, int readers) {
+            System.out.println("=== " + readers + " Virtual Readers ===");
+
+            // Lock-free counters keep readers off mutex; per-reader state is the ReaderHandle
+            ReadWriteLock rwLock = new ReadWriteLock(new ReadWriteLock.Options().lockFreeCounters(true));
+            CountDownLatch inside = new CountDownLatch(readers);
+            CountDownLatch release = new CountDownLatch(1);
+            int[] data = {0};
+
+            long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            for (int i = 0; i < readers; i++) {
+                executor.execute(() -> {
+                    ReadWriteLock.ReaderHandle handle = rwLock.registerReader();
+                    rwLock.readLock(handle);
+                    inside.countDown();
+                    awaitUninterruptibly(release);  // Parked while holding the read lock
+                    if (data[0] != 0) {
+                        System.err.println("Read during a write!");
+                    }
+                    rwLock.readUnLock(handle);
+                    rwLock.unregisterReader(handle);
+                });
+            }
+            awaitUninterruptibly(inside);
+            long acquireNanos = System.nanoTime() - start;
+            long heapInside = usedHeap();
+
+            // Writer: must wait until every reader has read the current version
+            release.countDown();
+            long drainStart = System.nanoTime();
+            rwLock.writeLock();
+            long drainNanos = System.nanoTime() - drainStart;
+            data[0]++;
+            rwLock.writeUnLock();
+
+            executor.shutdown();
+            boolean finished = false;
+            try {
+                finished = executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            System.out.printf("All readers inside after %d ms (%.0f acquisitions/s)%n",
+                    acquireNanos / 1_000_000, readers / (acquireNanos / 1e9));
+            System.out.printf("Heap while all readers hold the lock: %d MB (about %d bytes per reader)%n",
+                    (heapInside - heapBefore) >> 20, (heapInside - heapBefore) / readers);
+            System.out.printf("Writer waited %d ms for the readers to drain%n", drainNanos / 1_000_000);
+            if (!finished) {
+                System.err.println("Reader threads still running after 1 minute!");
+                return;
+            }
+            System.out.println("  All threads completed successfully!");
+        }
+
+        private static void awaitUninterruptibly(CountDownLatch latch) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private static long usedHeap() {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * VersionedData: Copy-on-write (RCU) holder for immutable snapshots, using ReadWriteLock's data versions
+ * - each publish() starts a new data version, like writeUnLock()
+ * - readers dereference the current snapshot with no lock at all: a read is a fixed number of
+ *   volatile accesses (pin, load, unpin) and never waits or retries, so reads are wait-free
+ * - a writer swaps in the new snapshot, then waits for a grace period: every reader pinned to an
+ *   older version must finish before the old snapshot is handed to the reclaimer
+ * Snapshots must not be modified once published; publish a changed copy instead
+ * Readers register a Reader handle, used by one thread at a time (like ReaderHandle)
+ */
+public class VersionedData<T> {
+
+    /**
+     * Reader handles per page - pages are never moved, so a writer scan never races a resize
+     */
+    private static final int PAGE_READERS = 1024;
+
+    /**
+     * Pin value of a reader that is not reading
+     */
+    private static final long NOT_READING = 0;
+
+    // STATE VARIABLES
+
+    /**
+     * Current snapshot; replaced, never modified, by publish()
+     */
+    private volatile T current;
+
+    /**
+     * Version of the current snapshot (starts at 1, so NOT_READING never matches a version)
+     * Bumped after current is replaced
+     */
+    private volatile long version = 1;
+
+    /**
+     * Called with each replaced snapshot once no reader can still see it
+     * (e.g. to return buffers to a pool); null leaves reclamation to the garbage collector
+     */
+    private final Consumer<? super T> reclaimer;
+
+    /**
+     * Serializes writers; readers never touch it
+     */
+    private final ReentrantLock writerLock = new ReentrantLock();
+
+    /**
+     * How writers wait for the grace period
+     */
+    private final WaitStrategy waitStrategy = WaitStrategy.spinThenPark();
+
+    // READER REGISTRATION
+
+    /**
+     * Guards slot allocation and the page directory
+     */
+    private final ReentrantLock registryLock = new ReentrantLock();
+
+    /**
+     * Page directory of registered readers; replaced (never mutated) when capacity grows
+     */
+    private volatile Reader[][] pages = new Reader[0][];
+    private int nextSlot = 0;
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount = 0;
+
+    public VersionedData(T initial) {
+        this(initial, null);
+    }
+
+    public VersionedData(T initial, Consumer<? super T> reclaimer) {
+        this.current = initial;
+        this.reclaimer = reclaimer;
+    }
+
+    // READER METHODS
+
+    /**
+     * Registers a reader; needed for read() and released with unregisterReader()
+     */
+    public Reader registerReader() {
+        registryLock.lock();
+        try {
+            int slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : nextSlot++;
+            Reader[][] directory = pages;
+            if (slot / PAGE_READERS >= directory.length) {
+                directory = Arrays.copyOf(directory, directory.length + 1);
+                directory[directory.length - 1] = new Reader[PAGE_READERS];
+                pages = directory;
+            }
+            Reader reader = new Reader(this, slot);
+            directory[slot / PAGE_READERS][slot % PAGE_READERS] = reader;
+            return reader;
+        } finally {
+            registryLock.unlock();
+        }
+    }
+
+    /**
+     * Releases a reader's slot for reuse; the reader must not be reading
+     */
+    public void unregisterReader(Reader reader) {
+        checkOwner(reader);
+        if (reader.depth != 0 || reader.slot < 0) {
+            throw new IllegalStateException("Reader is reading or already unregistered");
+        }
+        registryLock.lock();
+        try {
+            pages[reader.slot / PAGE_READERS][reader.slot % PAGE_READERS] = null;
+            if (freeSlotCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+            }
+            freeSlots[freeSlotCount++] = reader.slot;
+            reader.slot = -1;
+        } finally {
+            registryLock.unlock();
+        }
+    }
+
+    /**
+     * Applies fn to the current snapshot - wait-free, no lock taken
+     * STEP 1: Pin the current version, so a writer's grace period waits for us
+     * STEP 2: Load the snapshot (at least as new as the pinned version)
+     * STEP 3: Unpin once fn returns; the snapshot must not be used after that
+     * Nested reads with the same reader stay on the outer pin
+     * fn must not call publish() or update() on this VersionedData: the grace period would wait
+     * for fn's own pin, so they throw IllegalStateException instead
+     */
+    public <R> R read(Reader reader, Function<? super T, ? extends R> fn) {
+        checkOwner(reader);
+        if (reader.slot < 0) {
+            throw new IllegalStateException("Reader is unregistered");
+        }
+        if (reader.depth++ > 0) {
+            try {
+                return fn.apply(current);
+            } finally {
+                reader.depth--;
+            }
+        }
+        // A writer that misses this pin has already replaced current, so we load the new snapshot
+        reader.thread = Thread.currentThread();
+        reader.pinned = version;
+        try {
+            return fn.apply(current);
+        } finally {
+            reader.depth = 0;
+            reader.pinned = NOT_READING;
+        }
+    }
+
+    /**
+     * Version of the current snapshot
+     */
+    public long version() {
+        return version;
+    }
+
+    // WRITER METHODS
+
+    /**
+     * Publishes a new snapshot and starts a new version
+     * Returns once the replaced snapshot has been reclaimed, i.e. after every reader that
+     * could still see it has finished (readers that start meanwhile do not delay us)
+     * Throws IllegalStateException if called from inside read(), whose pin it would wait for forever
+     */
+    public void publish(T next) {
+        checkNotReading();
+        writerLock.lock();
+        try {
+            swapAndReclaim(next);
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Publishes fn(current snapshot) as a new version; fn must return a new object
+     * Updates are serialized, so none is lost
+     * Throws IllegalStateException if called from inside read(), like publish()
+     */
+    public void update(UnaryOperator<T> fn) {
+        checkNotReading();
+        writerLock.lock();
+        try {
+            swapAndReclaim(fn.apply(current));
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Swaps the snapshot, waits out the grace period and reclaims the old snapshot
+     * Caller holds writerLock
+     */
+    private void swapAndReclaim(T next) {
+        // STEP 1: Swap, then start the new version
+        T old = current;
+        long oldVersion = version;
+        current = next;
+        version = oldVersion + 1;
+
+        // STEP 2: Grace period - wait for readers pinned to an old version
+        // A reader pinned later has pinned the new version (or sees the new snapshot anyway)
+        for (Reader[] page : pages) {
+            for (Reader reader : page) {
+                if (reader != null) {
+                    waitStrategy.await(() -> {
+                        long pinned = reader.pinned;
+                        return pinned == NOT_READING || pinned > oldVersion;
+                    });
+                }
+            }
+        }
+
+        // STEP 3: Nobody can see the old snapshot any more
+        if (reclaimer != null && old != next) {
+            reclaimer.accept(old);
+        }
+    }
+
+    /**
+     * Throws if the calling thread holds a pin, i.e. is inside read()
+     * pinned is read before thread: a pin we see was set after its thread was stored
+     */
+    private void checkNotReading() {
+        Thread self = Thread.currentThread();
+        for (Reader[] page : pages) {
+            for (Reader reader : page) {
+                if (reader != null && reader.pinned != NOT_READING && reader.thread == self) {
+                    throw new IllegalStateException("publish() inside read() would wait for its own pin");
+                }
+            }
+        }
+    }
+
+    private void checkOwner(Reader reader) {
+        if (reader.owner != this) {
+            throw new IllegalArgumentException("Reader belongs to another VersionedData");
+        }
+    }
+
+    /**
+     * Registered reader of one VersionedData
+     * pinned is written by the reading thread and scanned by writers
+     */
+    public static final class Reader {
+        private final VersionedData<?> owner;
+        private int slot;
+
+        /**
+         * Version pinned by the current read, or NOT_READING
+         */
+        private volatile long pinned = NOT_READING;
+
+        /**
+         * Nesting depth of read(); only touched by the reading thread
+         */
+        private int depth = 0;
+
+        /**
+         * Thread of the current (or last) read, stored before pinned; lets publish() refuse
+         * to wait for its own caller
+         */
+        private Thread thread;
+
+        private Reader(VersionedData<?> owner, int slot) {
+            this.owner = owner;
+            this.slot = slot;
+        }
+    }
+}
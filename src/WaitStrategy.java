@@ -0,0 +1,220 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * WaitStrategy: How ReadWriteLock waits when a semaphore or condition is not ready
+ * - blocking(): park on the semaphore right away (one context switch per contended acquire)
+ * - spinThenPark(): spin with Thread.onSpinWait(), then yield, then park
+ *   The spin budget follows an exponentially weighted average of recent lock hold times:
+ *   short holds are worth spinning for, long holds go straight to parking
+ * A spinThenPark() instance keeps its own statistics, so use one instance per lock
+ * Virtual threads never spin: parking one only unmounts it, and spinning would hold
+ * a carrier thread that other virtual threads need
+ */
+public class WaitStrategy {
+
+    /**
+     * Longest time worth spinning; beyond this a park/unpark round-trip is cheaper
+     */
+    private static final long MAX_SPIN_NANOS = 20_000;
+
+    /**
+     * Yields tried after spinning and before parking
+     */
+    private static final int YIELDS = 8;
+
+    /**
+     * Spinning only pays off if the lock holder can run on another core
+     */
+    private static final boolean MULTI_CORE = Runtime.getRuntime().availableProcessors() > 1;
+
+    /**
+     * Thread.isVirtual() (JDK 21+), looked up reflectively so the class still runs on older JDKs
+     * Null when the running JDK has no virtual threads
+     */
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    /**
+     * True for spinThenPark(), false for blocking()
+     */
+    private final boolean adaptive;
+
+    /**
+     * Average observed hold time in nanoseconds (weight 1/8 per sample)
+     * Updated racily: a lost sample only makes the estimate slightly staler
+     */
+    private volatile long averageHoldNanos = 0;
+
+    private WaitStrategy(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Parks immediately - the original ReadWriteLock behaviour
+     */
+    public static WaitStrategy blocking() {
+        return new WaitStrategy(false);
+    }
+
+    /**
+     * Spins, yields, then parks, with a spin budget adapted to observed hold times
+     */
+    public static WaitStrategy spinThenPark() {
+        return new WaitStrategy(true);
+    }
+
+    /**
+     * True if this strategy wants hold times reported through recordHold()
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Reports how long the lock was held, so the spin budget can follow the workload
+     */
+    public void recordHold(long nanos) {
+        long average = averageHoldNanos;
+        averageHoldNanos = average + ((nanos - average) >> 3);
+    }
+
+    /**
+     * Current spin budget in nanoseconds (0 means park right away)
+     * Spinning for about twice the average hold covers most handoffs; holds longer
+     * than MAX_SPIN_NANOS are not worth burning a core for
+     */
+    public long spinBudgetNanos() {
+        if (!adaptive || !MULTI_CORE || onVirtualThread()) {
+            return 0;
+        }
+        long average = averageHoldNanos;
+        return average > MAX_SPIN_NANOS ? 0 : Math.max(1_000, Math.min(MAX_SPIN_NANOS, average * 2));
+    }
+
+    /**
+     * Acquires one permit from the semaphore, ignoring interrupts (the interrupt status is kept)
+     * While spinning, a fair semaphore's permit is only taken if no thread is parked on it,
+     * so fair semaphores keep their FIFO order; non-fair semaphores are barged as usual
+     */
+    public void acquireUninterruptibly(Semaphore semaphore) {
+        if (!spinAcquire(semaphore, spinBudgetNanos())) {
+            semaphore.acquireUninterruptibly();
+        }
+    }
+
+    /**
+     * Acquires one permit if it becomes available within the timeout
+     * A timeout of zero or less still grants a free permit, but never one another thread is queued for
+     */
+    public boolean tryAcquire(Semaphore semaphore, long timeoutNanos) throws InterruptedException {
+        long start = System.nanoTime();
+        if (spinAcquire(semaphore, Math.min(spinBudgetNanos(), timeoutNanos))) {
+            return true;
+        }
+        return semaphore.tryAcquire(Math.max(0, timeoutNanos - (System.nanoTime() - start)), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Spin phase shared by the acquire methods: spins for up to budget nanoseconds, then yields
+     * Returns true if a permit was taken
+     */
+    private boolean spinAcquire(Semaphore semaphore, long budget) {
+        if (budget <= 0) {
+            return false;
+        }
+        long deadline = System.nanoTime() + budget;
+        int spins = 0;
+        while (true) {
+            if (mayBarge(semaphore) && semaphore.tryAcquire()) {
+                return true;
+            }
+            Thread.onSpinWait();
+            // Reading the clock every 16 spins keeps its cost off the spin loop
+            if ((++spins & 15) == 0 && System.nanoTime() - deadline > 0) {
+                break;
+            }
+        }
+        for (int i = 0; i < YIELDS; i++) {
+            Thread.yield();
+            if (mayBarge(semaphore) && semaphore.tryAcquire()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A spinning thread may take a permit directly unless that would jump a fair queue
+     */
+    private static boolean mayBarge(Semaphore semaphore) {
+        return !semaphore.isFair() || !semaphore.hasQueuedThreads();
+    }
+
+    /**
+     * Waits until the condition holds, for conditions that have no semaphore hand-off
+     * (e.g. a writer scanning reader stripes)
+     */
+    public void await(BooleanSupplier condition) {
+        awaitUntil(condition, false, 0L);
+    }
+
+    /**
+     * Timed await(): returns false if the condition still does not hold after the timeout
+     */
+    public boolean await(BooleanSupplier condition, long timeoutNanos) {
+        return awaitUntil(condition, true, System.nanoTime() + timeoutNanos);
+    }
+
+    /**
+     * Spins for the budget, then yields, then parks with growing timeouts capped at 1 ms
+     * (and at the deadline, if timed)
+     */
+    private boolean awaitUntil(BooleanSupplier condition, boolean timed, long deadline) {
+        long budget = onVirtualThread() ? 0 : Math.max(spinBudgetNanos(), MULTI_CORE ? 1_000 : 0);
+        long spinUntil = System.nanoTime() + budget;
+        int round = 0;
+        while (!condition.getAsBoolean()) {
+            long now = System.nanoTime();
+            if (timed && now - deadline >= 0) {
+                return false;
+            }
+            if (budget > 0 && now - spinUntil < 0) {
+                Thread.onSpinWait();
+            } else if (round < YIELDS) {
+                Thread.yield();
+                round++;
+            } else {
+                long park = Math.min(1_000_000L, 1_000L << Math.min(10, round++ - YIELDS));
+                LockSupport.parkNanos(timed ? Math.min(park, deadline - now) : park);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * True if the calling thread is a virtual thread
+     */
+    private static boolean onVirtualThread() {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}